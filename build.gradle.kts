@@ -13,6 +13,9 @@ repositories {
 
 dependencies {
     implementation(kotlin("stdlib"))
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.1")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 java {
@@ -29,6 +32,13 @@ sourceSets {
         kotlin.srcDirs("src/main/kotlin")
         java.srcDirs("src/main/java")
     }
+    test {
+        kotlin.srcDirs("src/test/kotlin")
+    }
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 application {
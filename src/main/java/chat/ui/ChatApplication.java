@@ -2,12 +2,12 @@ package chat.ui;
 
 import chat.backend.ChatService;
 import chat.backend.Conversation;
+import chat.ui.ConversationComboModel.ConversationItem;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 
 /**
  * Main application class for the Chat Demo.
@@ -17,18 +17,29 @@ import java.util.List;
  * - Right: User panel for another user
  */
 public class ChatApplication extends JFrame {
+    private static final int CONVERSATION_PAGE_SIZE = 100;
+    private static final int WARM_CONVERSATIONS = 8;
+    private static final long WARM_BYTES = 64L * 1024 * 1024;
+    private static final int PREFETCH_NEIGHBOURS = 2;
+    private static final int PREFETCH_RECENT = 3;
+
     private final ChatService chatService;
 
     private UserPanel leftUserPanel;
     private ConversationPanel conversationPanel;
+    private ConversationPrefetcher conversationPrefetcher;
     private UserPanel rightUserPanel;
     private JComboBox<ConversationItem> conversationCombo;
+    private ConversationComboModel conversationModel;
+    private JButton moreConversationsButton;
 
     public ChatApplication() {
         super("Chat Demo");
         this.chatService = new ChatService();
 
         initComponents();
+        conversationPrefetcher.start();
+        setupConversationListener();
         createSampleData();
         conversationCombo.addActionListener(e -> onConversationSelected());
         conversationPanel.setupMessageListener();
@@ -47,7 +58,9 @@ public class ChatApplication extends JFrame {
 
         // Create panels
         leftUserPanel = new UserPanel("Left User", chatService);
-        conversationPanel = new ConversationPanel(chatService);
+        conversationPrefetcher = new ConversationPrefetcher(chatService, WARM_CONVERSATIONS, WARM_BYTES,
+                ConversationPanel.INITIAL_MESSAGES);
+        conversationPanel = new ConversationPanel(chatService, conversationPrefetcher);
         rightUserPanel = new UserPanel("Right User", chatService);
 
         // Set different default user names
@@ -87,10 +100,19 @@ public class ChatApplication extends JFrame {
 
         // Conversation selector
         panel.add(new JLabel("Conversation:"));
-        conversationCombo = new JComboBox<>();
-        conversationCombo.setPreferredSize(new Dimension(200, 25));
+        conversationModel = new ConversationComboModel(chatService, CONVERSATION_PAGE_SIZE);
+        conversationCombo = new JComboBox<>(conversationModel);
+        conversationCombo.setPreferredSize(new Dimension(320, 25));
         panel.add(conversationCombo);
 
+        // Load the next page of older conversations
+        moreConversationsButton = new JButton("More...");
+        moreConversationsButton.addActionListener(e -> {
+            conversationModel.loadMore();
+            moreConversationsButton.setEnabled(conversationModel.hasMore());
+        });
+        panel.add(moreConversationsButton);
+
         // Create new conversation button
         JButton createButton = new JButton("New Conversation");
         createButton.addActionListener(e -> createNewConversation());
@@ -102,35 +124,56 @@ public class ChatApplication extends JFrame {
     private void onConversationSelected() {
         ConversationItem item = (ConversationItem) conversationCombo.getSelectedItem();
         if (item != null) {
-            Long conversationId = item.conversation.getId();
+            Long conversationId = item.getConversationId();
             // Update all panels with the selected conversation
             leftUserPanel.setCurrentConversation(conversationId);
             rightUserPanel.setCurrentConversation(conversationId);
             conversationPanel.setConversation(conversationId);
+            prefetchLikelyNext();
         }
     }
 
-    private void refreshConversationCombo() {
-        Long selectedId = null;
-        ConversationItem selected = (ConversationItem) conversationCombo.getSelectedItem();
-        if (selected != null) {
-            selectedId = selected.conversation.getId();
+    /**
+     * Warms the conversations the user is most likely to open next:
+     * neighbours of the selection in the list and the most recently active ones.
+     */
+    private void prefetchLikelyNext() {
+        int selected = conversationCombo.getSelectedIndex();
+        int size = conversationModel.getSize();
+        for (int offset = 1; offset <= PREFETCH_NEIGHBOURS; offset++) {
+            if (selected - offset >= 0) {
+                conversationPrefetcher.prefetch(conversationModel.getElementAt(selected - offset).getConversationId());
+            }
+            if (selected + offset < size) {
+                conversationPrefetcher.prefetch(conversationModel.getElementAt(selected + offset).getConversationId());
+            }
         }
-
-        conversationCombo.removeAllItems();
-        List<Conversation> conversations = chatService.getAllConversations();
-        for (Conversation conv : conversations) {
-            conversationCombo.addItem(new ConversationItem(conv));
+        for (int i = 0; i < Math.min(PREFETCH_RECENT, size); i++) {
+            conversationPrefetcher.prefetch(conversationModel.getElementAt(i).getConversationId());
         }
+    }
 
-        // Restore selection
-        if (selectedId != null) {
-            for (int i = 0; i < conversationCombo.getItemCount(); i++) {
-                if (conversationCombo.getItemAt(i).conversation.getId() == selectedId) {
-                    conversationCombo.setSelectedIndex(i);
-                    break;
-                }
-            }
+    private void setupConversationListener() {
+        chatService.addConversationSummaryListener(event ->
+                // Update on EDT
+                SwingUtilities.invokeLater(() -> {
+                    conversationModel.apply(event);
+                    moreConversationsButton.setEnabled(conversationModel.hasMore());
+                    // Conversations with new activity are likely to be opened next
+                    ConversationItem selected = (ConversationItem) conversationCombo.getSelectedItem();
+                    long conversationId = event.getSummary().getConversationId();
+                    if (event.getSummary().getLastMessage() != null &&
+                            (selected == null || selected.getConversationId() != conversationId)) {
+                        conversationPrefetcher.prefetch(conversationId);
+                    }
+                }));
+    }
+
+    private void refreshConversationCombo() {
+        conversationModel.reload();
+        moreConversationsButton.setEnabled(conversationModel.hasMore());
+        if (conversationCombo.getSelectedItem() == null && conversationModel.getSize() > 0) {
+            conversationCombo.setSelectedIndex(0);
         }
     }
 
@@ -158,15 +201,14 @@ public class ChatApplication extends JFrame {
             }
 
             Conversation conv = chatService.createConversation(name.trim(), participants);
-            refreshConversationCombo();
 
-            // Select the newly created conversation
-            for (int i = 0; i < conversationCombo.getItemCount(); i++) {
-                if (conversationCombo.getItemAt(i).conversation.getId() == conv.getId()) {
-                    conversationCombo.setSelectedIndex(i);
-                    break;
+            // Select the newly created conversation once its insert event has been applied
+            SwingUtilities.invokeLater(() -> {
+                ConversationItem item = conversationModel.findItem(conv.getId());
+                if (item != null) {
+                    conversationCombo.setSelectedItem(item);
                 }
-            }
+            });
 
             JOptionPane.showMessageDialog(this,
                     "Conversation '" + conv.getName() + "' created.",
@@ -203,20 +245,4 @@ public class ChatApplication extends JFrame {
             app.setVisible(true);
         });
     }
-
-    /**
-     * Wrapper class for displaying conversations in ComboBox.
-     */
-    private static class ConversationItem {
-        final Conversation conversation;
-
-        ConversationItem(Conversation conversation) {
-            this.conversation = conversation;
-        }
-
-        @Override
-        public String toString() {
-            return conversation.getName() + " (#" + conversation.getId() + ")";
-        }
-    }
 }
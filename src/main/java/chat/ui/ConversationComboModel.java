@@ -0,0 +1,181 @@
+package chat.ui;
+
+import chat.backend.ChatService;
+import chat.backend.ConversationSummary;
+import chat.backend.ConversationSummaryEvent;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combo box model backed by the activity-ordered conversation summaries.
+ * Holds the first pages of summaries and applies summary events incrementally,
+ * so the combo box never has to be rebuilt. Further pages are loaded on request,
+ * and items that move out of the loaded range are backfilled from the next one.
+ * Must be used on the EDT.
+ */
+public class ConversationComboModel extends AbstractListModel<ConversationComboModel.ConversationItem>
+        implements ComboBoxModel<ConversationComboModel.ConversationItem> {
+    private final ChatService chatService;
+    private final List<ConversationItem> items = new ArrayList<>();
+    private final int pageSize;
+    private int limit;
+    private ConversationItem selectedItem;
+
+    public ConversationComboModel(ChatService chatService, int pageSize) {
+        this.chatService = chatService;
+        this.pageSize = pageSize;
+        this.limit = pageSize;
+    }
+
+    /**
+     * Reloads all loaded pages, keeping the selection by conversation id.
+     */
+    public void reload() {
+        Long selectedId = selectedItem != null ? selectedItem.getConversationId() : null;
+        int oldSize = items.size();
+        items.clear();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        for (ConversationSummary summary : chatService.getConversationSummaries(0, limit)) {
+            items.add(new ConversationItem(summary));
+        }
+        if (!items.isEmpty()) {
+            fireIntervalAdded(this, 0, items.size() - 1);
+        }
+        selectedItem = selectedId != null ? findItem(selectedId) : null;
+        fireContentsChanged(this, -1, -1);
+    }
+
+    /**
+     * Loads the next page of less recently active conversations.
+     */
+    public void loadMore() {
+        limit += pageSize;
+        backfill();
+    }
+
+    public boolean hasMore() {
+        return chatService.getConversationCount() > items.size();
+    }
+
+    /**
+     * Applies an insert, update or move. Events are matched by conversation id, so an
+     * event for a summary that was already part of a loaded page is applied only once.
+     */
+    public void apply(ConversationSummaryEvent event) {
+        ConversationSummary summary = event.getSummary();
+        int toIndex = event.getToIndex();
+        int currentIndex = indexOf(summary.getConversationId());
+
+        if (currentIndex >= 0 && currentIndex == toIndex) {
+            items.get(currentIndex).summary = summary;
+            fireContentsChanged(this, currentIndex, currentIndex);
+            return;
+        }
+
+        ConversationItem item = null;
+        if (currentIndex >= 0) {
+            item = items.remove(currentIndex);
+            fireIntervalRemoved(this, currentIndex, currentIndex);
+        }
+        if (toIndex < limit && toIndex <= items.size()) {
+            if (item == null) {
+                item = new ConversationItem(summary);
+            }
+            item.summary = summary;
+            items.add(toIndex, item);
+            fireIntervalAdded(this, toIndex, toIndex);
+            if (items.size() > limit) {
+                int last = items.size() - 1;
+                items.remove(last);
+                fireIntervalRemoved(this, last, last);
+            }
+        }
+        // An item that moved past the loaded range leaves a gap; fill it from the next page
+        backfill();
+    }
+
+    private void backfill() {
+        if (items.size() >= limit) {
+            return;
+        }
+        List<ConversationSummary> next = chatService.getConversationSummaries(items.size(), limit - items.size());
+        int first = items.size();
+        for (ConversationSummary summary : next) {
+            // The backend may be ahead of the events applied so far; skip anything already shown
+            if (indexOf(summary.getConversationId()) < 0) {
+                items.add(new ConversationItem(summary));
+            }
+        }
+        if (items.size() > first) {
+            fireIntervalAdded(this, first, items.size() - 1);
+        }
+    }
+
+    public ConversationItem findItem(long conversationId) {
+        int index = indexOf(conversationId);
+        return index >= 0 ? items.get(index) : null;
+    }
+
+    private int indexOf(long conversationId) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getConversationId() == conversationId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public ConversationItem getElementAt(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public void setSelectedItem(Object anItem) {
+        if (selectedItem != anItem) {
+            selectedItem = (ConversationItem) anItem;
+            fireContentsChanged(this, -1, -1);
+        }
+    }
+
+    @Override
+    public Object getSelectedItem() {
+        return selectedItem;
+    }
+
+    /**
+     * Wrapper class for displaying conversations in ComboBox.
+     * The item instance is kept across updates so moves do not change the selection.
+     */
+    public static class ConversationItem {
+        private ConversationSummary summary;
+
+        ConversationItem(ConversationSummary summary) {
+            this.summary = summary;
+        }
+
+        public long getConversationId() {
+            return summary.getConversationId();
+        }
+
+        public ConversationSummary getSummary() {
+            return summary;
+        }
+
+        @Override
+        public String toString() {
+            String label = summary.getName() + " (#" + summary.getConversationId() + ")";
+            String preview = summary.getLastMessagePreview();
+            return preview != null ? label + " - " + preview : label;
+        }
+    }
+}
@@ -2,35 +2,49 @@ package chat.ui;
 
 import chat.backend.ChatService;
 import chat.backend.Conversation;
-import chat.backend.Message;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Panel displaying the conversation history.
  * Shows messages from the currently selected conversation, including images.
+ *
+ * Messages are rendered from models prepared off the EDT by the {@link ConversationPrefetcher}.
+ * Only the newest messages are turned into components up front, and the views of
+ * recently shown conversations are kept, so switching back to one is a plain swap.
  */
 public class ConversationPanel extends JPanel {
+    static final int INITIAL_MESSAGES = 50;
+    private static final int EARLIER_PAGE = 100;
+    private static final int CACHED_VIEWS = 3;
+
     private final ChatService chatService;
+    private final ConversationPrefetcher prefetcher;
+
+    // Built views of recently shown conversations; only touched on the EDT
+    private final Map<Long, ConversationView> views = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ConversationView> eldest) {
+            return size() > CACHED_VIEWS;
+        }
+    };
 
     private JLabel conversationTitle;
-    private JPanel messagesPanel;
     private JScrollPane scrollPane;
     private Long currentConversationId;
+    private ConversationView currentView;
 
-    private static final DateTimeFormatter TIME_FORMAT =
-            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
-
-    private static final int MAX_IMAGE_WIDTH = 300;
-    private static final int MAX_IMAGE_HEIGHT = 200;
-
-    public ConversationPanel(ChatService chatService) {
+    public ConversationPanel(ChatService chatService, ConversationPrefetcher prefetcher) {
         this.chatService = chatService;
+        this.prefetcher = prefetcher;
         initComponents();
     }
 
@@ -50,24 +64,19 @@ public class ConversationPanel extends JPanel {
         conversationTitle.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
         add(conversationTitle, BorderLayout.NORTH);
 
-        // Messages panel with vertical layout
-        messagesPanel = new JPanel();
-        messagesPanel.setLayout(new BoxLayout(messagesPanel, BoxLayout.Y_AXIS));
-        messagesPanel.setBackground(Color.WHITE);
-
-        scrollPane = new JScrollPane(messagesPanel);
+        // Messages are shown in per-conversation views swapped into the scroll pane
+        scrollPane = new JScrollPane(createMessagesPanel());
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         add(scrollPane, BorderLayout.CENTER);
     }
 
     public void setupMessageListener() {
-        chatService.addMessageListener(message -> {
+        prefetcher.addUpdateListener((conversationId, message) -> {
             // Update on EDT
             SwingUtilities.invokeLater(() -> {
-                if (currentConversationId != null &&
-                        message.getConversationId() == currentConversationId) {
-                    appendMessage(message);
+                if (currentView != null && currentView.conversationId == conversationId) {
+                    currentView.append(message);
                     scrollToBottom();
                 }
             });
@@ -76,12 +85,11 @@ public class ConversationPanel extends JPanel {
 
     public void setConversation(Long conversationId) {
         this.currentConversationId = conversationId;
+        prefetcher.setCurrentConversation(conversationId);
 
         if (conversationId == null) {
             conversationTitle.setText("No conversation selected");
-            messagesPanel.removeAll();
-            messagesPanel.revalidate();
-            messagesPanel.repaint();
+            showPlaceholder(null);
             return;
         }
 
@@ -98,17 +106,68 @@ public class ConversationPanel extends JPanel {
             return;
         }
 
-        messagesPanel.removeAll();
-        List<Message> messages = chatService.getMessages(currentConversationId);
-        for (Message message : messages) {
-            appendMessage(message);
+        // Warm conversations swap in immediately; cold ones are prepared in the background
+        long conversationId = currentConversationId;
+        ConversationRenderModel warm = prefetcher.getWarm(conversationId);
+        if (warm != null) {
+            showModel(warm);
+            return;
+        }
+
+        ConversationView view = views.get(conversationId);
+        if (view != null) {
+            showView(view);
+        } else {
+            showPlaceholder("Loading...");
+        }
+        prefetcher.load(conversationId).thenAccept(model -> SwingUtilities.invokeLater(() -> {
+            if (currentConversationId != null && currentConversationId == conversationId) {
+                showModel(model);
+            }
+        }));
+    }
+
+    private void showModel(ConversationRenderModel model) {
+        ConversationView view = views.get(model.getConversationId());
+        if (view == null) {
+            view = new ConversationView(model);
+            views.put(model.getConversationId(), view);
+        } else {
+            view.catchUp(model);
         }
-        messagesPanel.revalidate();
-        messagesPanel.repaint();
+        showView(view);
+    }
+
+    private void showView(ConversationView view) {
+        currentView = view;
+        scrollPane.setViewportView(view.panel);
         scrollToBottom();
     }
 
-    private void appendMessage(Message message) {
+    private void showPlaceholder(String text) {
+        currentView = null;
+        JPanel panel = createMessagesPanel();
+        if (text != null) {
+            JLabel label = new JLabel(text);
+            label.setForeground(Color.GRAY);
+            label.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+            panel.add(label);
+        }
+        scrollPane.setViewportView(panel);
+    }
+
+    private static JPanel createMessagesPanel() {
+        // Messages panel with vertical layout
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        panel.setBackground(Color.WHITE);
+        return panel;
+    }
+
+    private static JComponent createMessageComponent(MessageRenderModel model) {
+        // Older history may still be lazy
+        MessageRenderModel message = model.prepared();
+
         JPanel messagePanel = new JPanel();
         messagePanel.setLayout(new BoxLayout(messagePanel, BoxLayout.Y_AXIS));
         messagePanel.setBackground(Color.WHITE);
@@ -119,70 +178,36 @@ public class ConversationPanel extends JPanel {
         messagePanel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
         // Header with message ID, time and user
-        String time = TIME_FORMAT.format(message.getTimestamp());
-        JLabel headerLabel = new JLabel(String.format("#%d [%s] %s:", message.getId(), time, message.getSenderName()));
+        JLabel headerLabel = new JLabel(message.getHeader());
         headerLabel.setFont(headerLabel.getFont().deriveFont(Font.BOLD, 11f));
         headerLabel.setForeground(new Color(70, 70, 70));
         headerLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         messagePanel.add(headerLabel);
 
         // Text content (if any)
-        String text = message.getText();
-        if (text != null && !text.isEmpty()) {
-            JLabel textLabel = new JLabel("<html><body style='width: 250px'>" + escapeHtml(text) + "</body></html>");
+        if (message.getHtml() != null) {
+            JLabel textLabel = new JLabel(message.getHtml());
             textLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
             textLabel.setBorder(BorderFactory.createEmptyBorder(3, 0, 3, 0));
             messagePanel.add(textLabel);
         }
 
-        // Image (if any)
-        byte[] imageData = message.getImageData();
-        if (imageData != null) {
-            try {
-                ImageIcon originalIcon = new ImageIcon(imageData);
-                Image scaledImage = scaleImage(originalIcon.getImage());
-                JLabel imageLabel = new JLabel(new ImageIcon(scaledImage));
-                imageLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                imageLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
-                messagePanel.add(imageLabel);
-            } catch (Exception e) {
-                JLabel errorLabel = new JLabel("[Failed to load image]");
-                errorLabel.setForeground(Color.RED);
-                errorLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                messagePanel.add(errorLabel);
-            }
+        // Image (if any), already decoded and scaled
+        if (message.getImage() != null) {
+            JLabel imageLabel = new JLabel(new ImageIcon(message.getImage()));
+            imageLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            imageLabel.setBorder(BorderFactory.createEmptyBorder(5, 0, 5, 0));
+            messagePanel.add(imageLabel);
+        } else if (message.isImageFailed()) {
+            JLabel errorLabel = new JLabel("[Failed to load image]");
+            errorLabel.setForeground(Color.RED);
+            errorLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            messagePanel.add(errorLabel);
         }
 
         // Set max size to prevent horizontal expansion
         messagePanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, messagePanel.getPreferredSize().height + 50));
-
-        messagesPanel.add(messagePanel);
-        messagesPanel.revalidate();
-    }
-
-    private Image scaleImage(Image original) {
-        int width = original.getWidth(null);
-        int height = original.getHeight(null);
-
-        if (width <= MAX_IMAGE_WIDTH && height <= MAX_IMAGE_HEIGHT) {
-            return original;
-        }
-
-        double widthRatio = (double) MAX_IMAGE_WIDTH / width;
-        double heightRatio = (double) MAX_IMAGE_HEIGHT / height;
-        double ratio = Math.min(widthRatio, heightRatio);
-
-        int newWidth = (int) (width * ratio);
-        int newHeight = (int) (height * ratio);
-
-        return original.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
-    }
-
-    private String escapeHtml(String text) {
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\n", "<br>");
+        return messagePanel;
     }
 
     private void scrollToBottom() {
@@ -195,4 +220,73 @@ public class ConversationPanel extends JPanel {
     public Long getCurrentConversationId() {
         return currentConversationId;
     }
+
+    /**
+     * Built messages panel for one conversation. Only the newest messages are
+     * rendered at first; older ones are added a page at a time on request.
+     * Messages below the initially rendered ones are only reached that way, and
+     * everything from there on is deduplicated by id.
+     */
+    private static class ConversationView {
+        final long conversationId;
+        final JPanel panel = createMessagesPanel();
+        private final JButton earlierButton = new JButton("Show earlier messages");
+        private final List<MessageRenderModel> history;
+        private final Set<Long> renderedIds = new HashSet<>();
+        private final long tailStartId;
+        private int firstRendered;
+
+        ConversationView(ConversationRenderModel model) {
+            this.conversationId = model.getConversationId();
+            this.history = model.getMessages();
+            this.firstRendered = Math.max(0, history.size() - INITIAL_MESSAGES);
+            this.tailStartId = firstRendered < history.size() ? history.get(firstRendered).getMessageId() : Long.MIN_VALUE;
+
+            earlierButton.setAlignmentX(Component.LEFT_ALIGNMENT);
+            earlierButton.addActionListener(e -> showEarlier());
+            earlierButton.setVisible(firstRendered > 0);
+            panel.add(earlierButton);
+
+            for (int i = firstRendered; i < history.size(); i++) {
+                append(history.get(i));
+            }
+        }
+
+        /**
+         * Adds messages prepared since this view was last shown.
+         */
+        void catchUp(ConversationRenderModel model) {
+            // The model is in id order, so everything newer than the older history is at its end
+            List<MessageRenderModel> messages = model.getMessages();
+            List<MessageRenderModel> missed = new ArrayList<>();
+            for (int i = messages.size() - 1; i >= 0 && messages.get(i).getMessageId() >= tailStartId; i--) {
+                if (!renderedIds.contains(messages.get(i).getMessageId())) {
+                    missed.add(messages.get(i));
+                }
+            }
+            for (int i = missed.size() - 1; i >= 0; i--) {
+                append(missed.get(i));
+            }
+        }
+
+        void append(MessageRenderModel message) {
+            if (!renderedIds.add(message.getMessageId())) {
+                return;
+            }
+            panel.add(createMessageComponent(message));
+            panel.revalidate();
+        }
+
+        private void showEarlier() {
+            int from = Math.max(0, firstRendered - EARLIER_PAGE);
+            for (int i = from; i < firstRendered; i++) {
+                // Insert after the button, keeping chronological order
+                panel.add(createMessageComponent(history.get(i)), 1 + i - from);
+            }
+            firstRendered = from;
+            earlierButton.setVisible(from > 0);
+            panel.revalidate();
+            panel.repaint();
+        }
+    }
 }
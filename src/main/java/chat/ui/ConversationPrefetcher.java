@@ -0,0 +1,274 @@
+package chat.ui;
+
+import chat.backend.ChatService;
+import chat.backend.Message;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prepares render models for conversations in the background and keeps them in
+ * an LRU cache bounded by conversation count and estimated heap size, so
+ * switching to a warm conversation needs no history fetch or image decoding on
+ * the EDT. Only the newest messages of a conversation are prepared up front; the
+ * rest of its history is kept as lazy models. The conversation being shown is
+ * never evicted.
+ *
+ * Whole-conversation builds and live message updates run on separate threads,
+ * so a new message is never held up behind a large build. Messages arriving
+ * while a conversation is being built are buffered and applied once it is cached.
+ * Cached messages are kept in id order and deduplicated by id.
+ */
+public class ConversationPrefetcher {
+
+    /**
+     * Notified on the update thread after a new message was prepared for a cached conversation.
+     */
+    public interface UpdateListener {
+        void messagePrepared(long conversationId, MessageRenderModel message);
+    }
+
+    private static final Comparator<MessageRenderModel> BY_ID =
+            Comparator.comparingLong(MessageRenderModel::getMessageId);
+
+    private final ChatService chatService;
+    private final int maxConversations;
+    private final long maxBytes;
+    private final int preparedTail;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conversation-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "conversation-update");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by itself; access order makes iteration start with the least recently used
+    private final LinkedHashMap<Long, CachedConversation> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, CompletableFuture<ConversationRenderModel>> inFlight = new HashMap<>();
+    // Messages that arrived while their conversation was being built
+    private final Map<Long, List<Message>> pending = new HashMap<>();
+    private final List<UpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+    private long cachedBytes;
+    private volatile Long currentConversationId;
+
+    /**
+     * @param preparedTail how many of the newest messages of a conversation are prepared when it is built
+     */
+    public ConversationPrefetcher(ChatService chatService, int maxConversations, long maxBytes, int preparedTail) {
+        this.chatService = chatService;
+        this.maxConversations = maxConversations;
+        this.maxBytes = maxBytes;
+        this.preparedTail = preparedTail;
+    }
+
+    public void start() {
+        chatService.addMessageListener(message -> updateExecutor.execute(() -> onMessage(message)));
+    }
+
+    public void addUpdateListener(UpdateListener listener) {
+        updateListeners.add(listener);
+    }
+
+    /**
+     * Marks the conversation being shown, which is exempt from eviction.
+     */
+    public void setCurrentConversation(Long conversationId) {
+        this.currentConversationId = conversationId;
+    }
+
+    /**
+     * Returns the prepared model if the conversation is warm, otherwise null.
+     */
+    public ConversationRenderModel getWarm(long conversationId) {
+        synchronized (cache) {
+            CachedConversation cached = cache.get(conversationId);
+            return cached != null ? new ConversationRenderModel(conversationId, new ArrayList<>(cached.messages)) : null;
+        }
+    }
+
+    /**
+     * Returns the prepared model, building it in the background if the conversation is cold.
+     */
+    public CompletableFuture<ConversationRenderModel> load(long conversationId) {
+        ConversationRenderModel warm = getWarm(conversationId);
+        if (warm != null) {
+            return CompletableFuture.completedFuture(warm);
+        }
+        synchronized (cache) {
+            CompletableFuture<ConversationRenderModel> inProgress = inFlight.get(conversationId);
+            if (inProgress != null) {
+                return inProgress;
+            }
+            pending.put(conversationId, new ArrayList<>());
+            CompletableFuture<ConversationRenderModel> future =
+                    CompletableFuture.supplyAsync(() -> build(conversationId), buildExecutor);
+            inFlight.put(conversationId, future);
+            return future;
+        }
+    }
+
+    /**
+     * Warms the conversation in the background if it is not already cached.
+     */
+    public void prefetch(long conversationId) {
+        load(conversationId);
+    }
+
+    private ConversationRenderModel build(long conversationId) {
+        boolean published = false;
+        try {
+            ConversationRenderModel warm = getWarm(conversationId);
+            if (warm != null) {
+                return warm;
+            }
+            List<Message> history = chatService.getMessages(conversationId);
+            int tailStart = Math.max(0, history.size() - preparedTail);
+            CachedConversation cached = new CachedConversation(history.size());
+            for (int i = 0; i < history.size(); i++) {
+                Message message = history.get(i);
+                cached.messages.add(i < tailStart ? MessageRenderModel.lazy(message) : MessageRenderModel.prepare(message));
+            }
+            // Concurrent sends may have been stored slightly out of id order
+            cached.messages.sort(BY_ID);
+            for (MessageRenderModel message : cached.messages) {
+                cached.bytes += message.estimatedBytes();
+            }
+            // Published on the update thread, so buffered and later messages are applied in delivery order
+            ConversationRenderModel model =
+                    CompletableFuture.supplyAsync(() -> publish(conversationId, cached), updateExecutor).join();
+            published = true;
+            return model;
+        } finally {
+            if (!published) {
+                // Already warm, or the build failed
+                synchronized (cache) {
+                    inFlight.remove(conversationId);
+                    pending.remove(conversationId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Caches a built conversation and applies the messages that arrived while it was built.
+     * Runs on the update thread.
+     */
+    private ConversationRenderModel publish(long conversationId, CachedConversation cached) {
+        List<Message> buffered;
+        synchronized (cache) {
+            cache.put(conversationId, cached);
+            cachedBytes += cached.bytes;
+            buffered = pending.remove(conversationId);
+            inFlight.remove(conversationId);
+            evict();
+        }
+        if (buffered != null) {
+            buffered.forEach(this::onMessage);
+        }
+        ConversationRenderModel model = getWarm(conversationId);
+        return model != null ? model : new ConversationRenderModel(conversationId, new ArrayList<>(cached.messages));
+    }
+
+    private void onMessage(Message message) {
+        long conversationId = message.getConversationId();
+        synchronized (cache) {
+            CachedConversation cached = cache.get(conversationId);
+            if (cached == null) {
+                // Not warm; keep it for the build in progress, if any
+                List<Message> buffered = pending.get(conversationId);
+                if (buffered != null) {
+                    buffered.add(message);
+                }
+                return;
+            }
+            if (cached.contains(message.getId())) {
+                return; // already part of the history the model was built from
+            }
+        }
+
+        MessageRenderModel prepared = MessageRenderModel.prepare(message);
+        synchronized (cache) {
+            CachedConversation cached = cache.get(conversationId);
+            if (cached == null || !cached.insert(prepared)) {
+                return;
+            }
+            cachedBytes += prepared.estimatedBytes();
+            evict();
+        }
+        for (UpdateListener listener : updateListeners) {
+            listener.messagePrepared(conversationId, prepared);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Long, CachedConversation>> it = cache.entrySet().iterator();
+        while ((cache.size() > maxConversations || cachedBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Long, CachedConversation> eldest = it.next();
+            if (eldest.getKey().equals(currentConversationId)) {
+                continue;
+            }
+            cachedBytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Render models of one cached conversation, kept sorted by message id.
+     */
+    private static final class CachedConversation {
+        final List<MessageRenderModel> messages;
+        long bytes;
+
+        CachedConversation(int capacity) {
+            this.messages = new ArrayList<>(capacity);
+        }
+
+        boolean contains(long messageId) {
+            return indexOf(messageId) >= 0;
+        }
+
+        /**
+         * Inserts the message at its id position; returns false if it is already present.
+         */
+        boolean insert(MessageRenderModel message) {
+            int index = indexOf(message.getMessageId());
+            if (index >= 0) {
+                return false;
+            }
+            messages.add(-index - 1, message);
+            bytes += message.estimatedBytes();
+            return true;
+        }
+
+        private int indexOf(long messageId) {
+            int low = 0;
+            int high = messages.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long id = messages.get(middle).getMessageId();
+                if (id < messageId) {
+                    low = middle + 1;
+                } else if (id > messageId) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package chat.ui;
+
+import java.util.List;
+
+/**
+ * Snapshot of a conversation's prepared messages, ready to be shown.
+ */
+public final class ConversationRenderModel {
+    private final long conversationId;
+    private final List<MessageRenderModel> messages;
+
+    ConversationRenderModel(long conversationId, List<MessageRenderModel> messages) {
+        this.conversationId = conversationId;
+        this.messages = messages;
+    }
+
+    public long getConversationId() {
+        return conversationId;
+    }
+
+    public List<MessageRenderModel> getMessages() {
+        return messages;
+    }
+}
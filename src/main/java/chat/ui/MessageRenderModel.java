@@ -0,0 +1,142 @@
+package chat.ui;
+
+import chat.backend.ImageIngestor;
+import chat.backend.Message;
+import chat.backend.MessageText;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Display-ready form of a message: formatted header, escaped HTML text and a
+ * decoded, scaled image. Preparing it involves no Swing components, so it can
+ * be done off the EDT.
+ *
+ * A {@link #lazy} model only refers to its message and is prepared when it is
+ * first rendered, so history that is rarely scrolled back to costs next to nothing.
+ */
+public final class MessageRenderModel {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private static final int MAX_IMAGE_WIDTH = 300;
+    private static final int MAX_IMAGE_HEIGHT = 200;
+
+    // Object headers and fields, roughly
+    private static final int OVERHEAD_BYTES = 64;
+
+    private final long messageId;
+    private final Message source;
+    private final String header;
+    private final String html;
+    private final BufferedImage image;
+    private final boolean imageFailed;
+
+    private MessageRenderModel(long messageId, Message source, String header, String html,
+                               BufferedImage image, boolean imageFailed) {
+        this.messageId = messageId;
+        this.source = source;
+        this.header = header;
+        this.html = html;
+        this.image = image;
+        this.imageFailed = imageFailed;
+    }
+
+    public static MessageRenderModel prepare(Message message) {
+        // Header with message ID, time and user
+        String time = TIME_FORMAT.format(message.getTimestamp());
+        String header = String.format("#%d [%s] %s:", message.getId(), time, message.getSenderName());
+
+        // Text content (if any)
+        String text = message.getText();
+        String html = null;
+        if (text != null && !text.isEmpty()) {
+            html = "<html><body style='width: 250px'>" + escapeHtml(text) + "</body></html>";
+        }
+
+        // Image (if any)
+        BufferedImage image = null;
+        boolean imageFailed = false;
+        byte[] imageData = message.getImageData();
+        if (imageData != null) {
+            try {
+                BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(imageData));
+                if (decoded != null) {
+                    image = ImageIngestor.scaleToFit(decoded, MAX_IMAGE_WIDTH, MAX_IMAGE_HEIGHT);
+                } else {
+                    imageFailed = true;
+                }
+            } catch (Exception e) {
+                imageFailed = true;
+            }
+        }
+
+        return new MessageRenderModel(message.getId(), null, header, html, image, imageFailed);
+    }
+
+    /**
+     * Returns a model that is only prepared once {@link #prepared()} is called.
+     */
+    public static MessageRenderModel lazy(Message message) {
+        return new MessageRenderModel(message.getId(), message, null, null, null, false);
+    }
+
+    public boolean isPrepared() {
+        return source == null;
+    }
+
+    /**
+     * Returns this model if it is prepared, otherwise a prepared copy.
+     */
+    public MessageRenderModel prepared() {
+        return source == null ? this : prepare(source);
+    }
+
+    /**
+     * Approximate heap held by this model: text as sized by {@link MessageText#stringBytes}
+     * and the scaled image at four bytes per pixel.
+     */
+    public long estimatedBytes() {
+        long bytes = OVERHEAD_BYTES;
+        if (header != null) {
+            bytes += MessageText.stringBytes(header);
+        }
+        if (html != null) {
+            bytes += MessageText.stringBytes(html);
+        }
+        if (image != null) {
+            bytes += (long) image.getWidth() * image.getHeight() * 4;
+        }
+        return bytes;
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;")
+                   .replace("<", "&lt;")
+                   .replace(">", "&gt;")
+                   .replace("\n", "<br>");
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public boolean isImageFailed() {
+        return imageFailed;
+    }
+}
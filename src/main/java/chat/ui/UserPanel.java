@@ -1,10 +1,14 @@
 package chat.ui;
 
 import chat.backend.ChatService;
+import chat.backend.Message;
+import chat.backend.ProcessedImage;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Panel representing a user's view of the chat.
@@ -18,7 +22,7 @@ public class UserPanel extends JPanel {
     private JTextArea messageInput;
     private JButton sendButton;
     private JButton attachImageButton;
-    private byte[] pendingImage;
+    private CompletableFuture<ProcessedImage> pendingImage;
     private JLabel imagePreviewLabel;
 
     private Long currentConversationId;
@@ -97,24 +101,35 @@ public class UserPanel extends JPanel {
         });
 
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try {
-                java.io.File file = fileChooser.getSelectedFile();
-                pendingImage = java.nio.file.Files.readAllBytes(file.toPath());
-
-                // Show thumbnail preview
-                ImageIcon icon = new ImageIcon(pendingImage);
-                Image scaled = icon.getImage().getScaledInstance(80, 50, Image.SCALE_SMOOTH);
-                imagePreviewLabel.setIcon(new ImageIcon(scaled));
-                imagePreviewLabel.setText("");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this,
-                    "Failed to load image: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-                pendingImage = null;
-            }
+            java.io.File file = fileChooser.getSelectedFile();
+            imagePreviewLabel.setIcon(null);
+            imagePreviewLabel.setText("Loading...");
+
+            // Read and downscale off the EDT, then show the thumbnail preview
+            CompletableFuture<ProcessedImage> ingest = chatService.ingestImage(file.toPath());
+            pendingImage = ingest;
+            ingest.whenComplete((image, error) -> SwingUtilities.invokeLater(() -> {
+                if (pendingImage != ingest) {
+                    return; // replaced or cleared while loading
+                }
+                if (error != null) {
+                    showImageError(error);
+                    clearImagePreview();
+                } else {
+                    imagePreviewLabel.setIcon(new ImageIcon(image.getPreview()));
+                    imagePreviewLabel.setText("");
+                }
+            }));
         }
     }
 
+    private void showImageError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        JOptionPane.showMessageDialog(this,
+            "Failed to load image: " + cause.getMessage(),
+            "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
     private void clearImagePreview() {
         pendingImage = null;
         imagePreviewLabel.setIcon(null);
@@ -148,9 +163,45 @@ public class UserPanel extends JPanel {
             return;
         }
 
-        chatService.sendMessage(currentConversationId, userName, text, pendingImage);
-        messageInput.setText("");
-        clearImagePreview();
+        // Sends held back by the rate limiter complete later instead of blocking the EDT,
+        // and sends with an attachment complete once it has been processed
+        Long conversationId = currentConversationId;
+        CompletableFuture<ProcessedImage> image = pendingImage;
+        CompletableFuture<Message> sent = image == null
+                ? chatService.sendMessageAsync(conversationId, userName, text)
+                : image.thenCompose(processed ->
+                        chatService.sendMessageAsync(conversationId, userName, text, processed.getData()));
+        setSending(true);
+        sent.whenComplete((message, error) -> SwingUtilities.invokeLater(() -> {
+            setSending(false);
+            if (image != null && image.isCompletedExceptionally()) {
+                return; // reported by the attachment's own completion handler
+            }
+            if (error != null || message == null) {
+                showNotSent();
+                return;
+            }
+            // Keep anything typed while the send was pending
+            if (messageInput.getText().trim().equals(text)) {
+                messageInput.setText("");
+            }
+            if (image != null && pendingImage == image) {
+                clearImagePreview();
+            }
+        }));
+    }
+
+    private void showNotSent() {
+        JOptionPane.showMessageDialog(this,
+                "Message was not sent. You may be sending too fast, please try again.",
+                "Not Sent",
+                JOptionPane.WARNING_MESSAGE);
+    }
+
+    private void setSending(boolean sending) {
+        sendButton.setEnabled(!sending);
+        attachImageButton.setEnabled(!sending);
+        sendButton.setText(sending ? "Sending..." : "Send");
     }
 
     public void setCurrentConversation(Long conversationId) {
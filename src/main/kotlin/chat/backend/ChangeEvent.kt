@@ -0,0 +1,24 @@
+package chat.backend
+
+import java.time.Instant
+
+/**
+ * Entry in the change feed. Offsets increase by one per event with no gaps.
+ * [message] is set for [Type.MESSAGE_SENT], [userName] for [Type.PARTICIPANT_ADDED]
+ * and [participants] for [Type.CONVERSATION_CREATED].
+ */
+data class ChangeEvent(
+    val offset: Long,
+    val type: Type,
+    val conversationId: Long,
+    val message: Message? = null,
+    val userName: String? = null,
+    val participants: List<String> = emptyList(),
+    val timestamp: Instant = Instant.now()
+) {
+    enum class Type {
+        CONVERSATION_CREATED,
+        PARTICIPANT_ADDED,
+        MESSAGE_SENT
+    }
+}
@@ -1,10 +1,24 @@
 package chat.backend
 
+import chat.backend.analytics.AnalyticsReport
+import chat.backend.analytics.ConversationAnalytics
+import chat.backend.analytics.MessageStats
+import chat.backend.repository.ChangeFeed
 import chat.backend.repository.ConversationRepository
+import chat.backend.repository.ConversationSummaryRepository
+import chat.backend.repository.InMemoryChangeFeed
 import chat.backend.repository.InMemoryConversationRepository
+import chat.backend.repository.InMemoryConversationSummaryRepository
 import chat.backend.repository.InMemoryMessageRepository
 import chat.backend.repository.MessageRepository
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
 import java.util.function.Consumer
 
 /**
@@ -12,19 +26,60 @@ import java.util.function.Consumer
  */
 class ChatService(
     private val conversationRepository: ConversationRepository = InMemoryConversationRepository(),
-    private val messageRepository: MessageRepository = InMemoryMessageRepository()
+    private val messageRepository: MessageRepository = InMemoryMessageRepository(),
+    private val summaryRepository: ConversationSummaryRepository = InMemoryConversationSummaryRepository(),
+    private val imageIngestor: ImageIngestor = ImageIngestor(),
+    private val rateLimiter: RateLimiter = RateLimiter(),
+    private val changeFeed: ChangeFeed = InMemoryChangeFeed()
 ) {
     private val messageListeners = CopyOnWriteArrayList<Consumer<Message>>()
+    private val summaryListeners = CopyOnWriteArrayList<Consumer<ConversationSummaryEvent>>()
+    // Summary changes are applied and published under one lock so listeners see indices in order
+    private val summaryLock = Any()
+    private val analytics = ConversationAnalytics(conversationRepository, messageRepository)
+    // Feed events are appended under the same lock as the change they record, so the feed
+    // never repeats a change or orders it differently from the repositories
+    private val createLock = Any()
+    private val conversationLocks = Array(CONVERSATION_LOCK_STRIPES) { Any() }
+    // Conversations whose creation is already in the feed; only these accept changes
+    private val announced: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+    init {
+        // Conversations already in the repository get summaries built from their history,
+        // and are announced in the feed so they accept changes like new ones
+        for (conversation in conversationRepository.findAll().sortedBy { it.id }) {
+            if (summaryRepository.findById(conversation.id) == null) {
+                val history = messageRepository.findByConversationId(conversation.id)
+                summaryRepository.insert(conversation, history.maxByOrNull { it.id }, history.size)
+            }
+            synchronized(createLock) {
+                changeFeed.appendConversationCreated(conversation.id, conversation.participants.toList())
+            }
+            announced.add(conversation.id)
+        }
+    }
 
     companion object {
         private const val MAX_MESSAGE_LENGTH = 10_000
+        private const val CONVERSATION_LOCK_STRIPES = 64
+
+        // Runs sends that the rate limiter delayed
+        private val sendExecutor: Executor = Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "delayed-send").apply { isDaemon = true }
+        }
     }
 
     fun createConversation(name: String, participants: List<String>): Conversation {
-        val conversation = conversationRepository.create(name, participants)
+        val conversation = synchronized(createLock) {
+            val created = conversationRepository.create(name, participants)
+            changeFeed.appendConversationCreated(created.id, participants)
+            created
+        }
         if (messageRepository is InMemoryMessageRepository) {
             messageRepository.initConversation(conversation.id)
         }
+        updateSummary { summaryRepository.insert(conversation) }
+        announced.add(conversation.id)
         return conversation
     }
 
@@ -40,31 +95,187 @@ class ChatService(
         return conversationRepository.findAll()
     }
 
+    /**
+     * Sends a message, subject to the per-sender and per-conversation rate limits.
+     * Returns null if the conversation does not exist or the send was throttled.
+     *
+     * With [RateLimitConfig.Policy.DELAY] a send over the limit blocks the calling thread
+     * for up to [RateLimitConfig.maxDelay]; UI threads should use [sendMessageAsync] instead.
+     */
     @JvmOverloads
     fun sendMessage(conversationId: Long, senderName: String, text: String, imageData: ByteArray? = null): Message? {
-        val conversation = conversationRepository.findById(conversationId) ?: return null
+        val conversation = findAnnounced(conversationId) ?: return null
 
-        // Truncate text to max length, ensure at least 1 char for notifications
-        val truncatedText = text.substring(0, text.length.coerceIn(1, MAX_MESSAGE_LENGTH))
+        val wait = rateLimiter.acquire(conversationId, senderName)
+        if (wait == RateLimiter.REJECTED) {
+            return null
+        }
+        if (wait > 0) {
+            // parkNanos may return early, so keep parking until the deadline has passed
+            val deadline = System.nanoTime() + wait
+            var remaining = wait
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining)
+                remaining = deadline - System.nanoTime()
+            }
+        }
+        return deliver(conversation, senderName, text, imageData)
+    }
+
+    /**
+     * Like [sendMessage], but a send delayed by the rate limiter is scheduled rather
+     * than blocking the caller. The future completes with null if the send was refused.
+     */
+    @JvmOverloads
+    fun sendMessageAsync(conversationId: Long, senderName: String, text: String,
+                         imageData: ByteArray? = null): CompletableFuture<Message?> {
+        val conversation = findAnnounced(conversationId)
+            ?: return CompletableFuture.completedFuture(null)
 
-        if (!conversation.hasParticipant(senderName)) {
-            conversationRepository.addParticipant(conversationId, senderName)
+        val wait = rateLimiter.acquire(conversationId, senderName)
+        if (wait == RateLimiter.REJECTED) {
+            return CompletableFuture.completedFuture(null)
+        }
+        if (wait == 0L) {
+            return CompletableFuture.completedFuture(deliver(conversation, senderName, text, imageData))
         }
+        val delayed = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, sendExecutor)
+        return CompletableFuture.supplyAsync({ deliver(conversation, senderName, text, imageData) }, delayed)
+    }
+
+    private fun deliver(conversation: Conversation, senderName: String, text: String, imageData: ByteArray?): Message {
+        val conversationId = conversation.id
+
+        // Truncate text to max length, ensure at least 1 char for notifications unless an image is attached
+        val truncatedText = if (text.isEmpty() && imageData != null) text
+            else text.substring(0, text.length.coerceIn(1, MAX_MESSAGE_LENGTH))
 
-        // TODO: implement image attachment support
-        val message = messageRepository.create(conversationId, senderName, truncatedText)
+        val message = synchronized(lockFor(conversationId)) {
+            if (!conversation.hasParticipant(senderName) &&
+                    conversationRepository.addParticipant(conversationId, senderName)) {
+                changeFeed.appendParticipantAdded(conversationId, senderName)
+            }
+            val created = messageRepository.create(conversationId, senderName, truncatedText, imageData)
+            changeFeed.appendMessageSent(created)
+            created
+        }
+        updateSummary { summaryRepository.recordMessage(message, conversation.participants.size) }
+        analytics.record(message)
 
         messageListeners.forEach { it.accept(message) }
 
         return message
     }
 
+    /**
+     * Loads and downscales an image for attaching to a message, off the calling thread.
+     * Pass [ProcessedImage.data] to [sendMessage] once the future completes.
+     */
+    fun ingestImage(path: Path): CompletableFuture<ProcessedImage> {
+        return imageIngestor.ingest(path)
+    }
+
+    fun getRateLimiterStats(): RateLimiterStats {
+        return rateLimiter.getStats()
+    }
+
+    fun getCompressionStats(conversationId: Long): CompressionStats? {
+        return messageRepository.getCompressionStats(conversationId)
+    }
+
+    /**
+     * Computes statistics for every conversation and overall, in parallel over full history.
+     */
+    fun computeAnalytics(): AnalyticsReport {
+        return analytics.computeReport()
+    }
+
+    fun computeConversationStats(conversationId: Long): MessageStats? {
+        return analytics.computeStats(conversationId)
+    }
+
+    /**
+     * Statistics over the recent rolling window, maintained on send without rescanning.
+     */
+    fun getRecentConversationStats(conversationId: Long): MessageStats {
+        return analytics.rollingStats(conversationId)
+    }
+
+    fun getRecentStats(): MessageStats {
+        return analytics.globalRollingStats()
+    }
+
     fun getMessages(conversationId: Long): List<Message> {
         return messageRepository.findByConversationId(conversationId)
     }
 
     fun addParticipant(conversationId: Long, userName: String): Boolean {
-        return conversationRepository.addParticipant(conversationId, userName)
+        val conversation = findAnnounced(conversationId) ?: return false
+        synchronized(lockFor(conversationId)) {
+            if (conversationRepository.addParticipant(conversationId, userName)) {
+                changeFeed.appendParticipantAdded(conversationId, userName)
+            }
+        }
+        updateSummary { summaryRepository.updateParticipantCount(conversationId, conversation.participants.size) }
+        return true
+    }
+
+    private fun findAnnounced(conversationId: Long): Conversation? {
+        return if (conversationId in announced) conversationRepository.findById(conversationId) else null
+    }
+
+    private fun lockFor(conversationId: Long): Any {
+        return conversationLocks[Math.floorMod(conversationId, CONVERSATION_LOCK_STRIPES)]
+    }
+
+    /**
+     * Returns a page of conversation summaries, most recently active first.
+     */
+    fun getConversationSummaries(offset: Int, limit: Int): List<ConversationSummary> {
+        return summaryRepository.findPage(offset, limit)
+    }
+
+    fun getConversationSummary(conversationId: Long): ConversationSummary? {
+        return summaryRepository.findById(conversationId)
+    }
+
+    fun getConversationCount(): Int {
+        return summaryRepository.count()
+    }
+
+    /**
+     * Reads up to [maxEvents] change feed events starting at [fromOffset].
+     * Throws [OffsetOutOfRangeException] if the offset is no longer retained.
+     */
+    fun readChanges(fromOffset: Long, maxEvents: Int): List<ChangeEvent> {
+        return changeFeed.read(fromOffset, maxEvents)
+    }
+
+    /**
+     * Tails the change feed: like [readChanges], but waits up to [timeoutMillis]
+     * for new events when [fromOffset] is the end of the feed.
+     */
+    fun pollChanges(fromOffset: Long, maxEvents: Int, timeoutMillis: Long): List<ChangeEvent> {
+        return changeFeed.poll(fromOffset, maxEvents, timeoutMillis)
+    }
+
+    fun getEarliestChangeOffset(): Long {
+        return changeFeed.earliestOffset()
+    }
+
+    fun getNextChangeOffset(): Long {
+        return changeFeed.nextOffset()
+    }
+
+    /**
+     * Stores the next offset [consumerId] should read, so it can resume from there after a restart.
+     */
+    fun commitChangeOffset(consumerId: String, offset: Long) {
+        changeFeed.commit(consumerId, offset)
+    }
+
+    fun getCommittedChangeOffset(consumerId: String): Long? {
+        return changeFeed.committedOffset(consumerId)
     }
 
     fun addMessageListener(listener: Consumer<Message>) {
@@ -74,4 +285,23 @@ class ChatService(
     fun removeMessageListener(listener: Consumer<Message>) {
         messageListeners.remove(listener)
     }
+
+    /**
+     * Registers a listener for incremental summary list changes. Listeners are
+     * called in change order while the summary lock is held, so they must not block.
+     */
+    fun addConversationSummaryListener(listener: Consumer<ConversationSummaryEvent>) {
+        summaryListeners.add(listener)
+    }
+
+    fun removeConversationSummaryListener(listener: Consumer<ConversationSummaryEvent>) {
+        summaryListeners.remove(listener)
+    }
+
+    private inline fun updateSummary(change: () -> ConversationSummaryEvent?) {
+        synchronized(summaryLock) {
+            val event = change() ?: return
+            summaryListeners.forEach { it.accept(event) }
+        }
+    }
 }
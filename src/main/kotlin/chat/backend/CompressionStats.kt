@@ -0,0 +1,21 @@
+package chat.backend
+
+/**
+ * Text compression counters for one conversation's stored messages.
+ * Byte counts compare the size of the text as a plain [String] (one byte per
+ * char for Latin-1 text, two otherwise) with the size actually stored.
+ */
+data class CompressionStats(
+    val conversationId: Long,
+    val messages: Long,
+    val compressedMessages: Long,
+    val rawBytes: Long,
+    val storedBytes: Long,
+    val compressNanos: Long,
+    val decompressNanos: Long,
+    val decompressions: Long,
+    val dictionaryTrained: Boolean
+) {
+    val ratio: Double
+        get() = if (storedBytes == 0L) 1.0 else rawBytes.toDouble() / storedBytes
+}
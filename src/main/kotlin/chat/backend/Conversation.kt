@@ -8,8 +8,11 @@ data class Conversation(
     val name: String,
     val participants: MutableSet<String> = mutableSetOf()
 ) {
-    fun addParticipant(userName: String) {
-        participants.add(userName)
+    /**
+     * Returns false if the user was already a participant.
+     */
+    fun addParticipant(userName: String): Boolean {
+        return participants.add(userName)
     }
 
     fun removeParticipant(userName: String) {
@@ -0,0 +1,42 @@
+package chat.backend
+
+import java.time.Instant
+
+/**
+ * Materialized per-conversation summary used by conversation lists.
+ * Kept up to date on send so listing never has to read message history.
+ */
+data class ConversationSummary(
+    val conversationId: Long,
+    val name: String,
+    val lastMessage: Message?,
+    /** Short one-line form of [lastMessage], built once so lists never decode message text. */
+    val lastMessagePreview: String?,
+    val lastActivity: Instant,
+    val messageCount: Int,
+    val participantCount: Int
+) {
+    override fun toString(): String {
+        return "$name (ID: $conversationId, messages: $messageCount)"
+    }
+
+    companion object {
+        private const val PREVIEW_LENGTH = 30
+
+        /**
+         * Most recently active conversations first, ties broken by newest conversation id.
+         */
+        @JvmField
+        val BY_RECENT_ACTIVITY: Comparator<ConversationSummary> =
+            compareByDescending<ConversationSummary> { it.lastActivity }.thenByDescending { it.conversationId }
+
+        @JvmStatic
+        fun previewOf(message: Message): String {
+            val text = message.text
+            val line = (if (text.length > PREVIEW_LENGTH) text.substring(0, PREVIEW_LENGTH) + "..." else text)
+                .replace('\n', ' ')
+            val imgIndicator = if (message.hasImage()) " [IMAGE]" else ""
+            return "${message.senderName}: $line$imgIndicator"
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package chat.backend
+
+/**
+ * Incremental change to the activity-ordered conversation summary list.
+ *
+ * [fromIndex] is the position before the change (-1 for [Type.INSERTED]) and
+ * [toIndex] is the position after it. For [Type.UPDATED] both are equal.
+ */
+data class ConversationSummaryEvent(
+    val type: Type,
+    val summary: ConversationSummary,
+    val fromIndex: Int,
+    val toIndex: Int
+) {
+    enum class Type {
+        INSERTED,
+        UPDATED,
+        MOVED
+    }
+}
@@ -0,0 +1,18 @@
+package chat.backend
+
+/**
+ * Limits and target sizes for attached images.
+ */
+data class ImageIngestConfig(
+    /** Files larger than this are rejected before decoding. */
+    val maxInputBytes: Long = 64L * 1024 * 1024,
+    /** Images with more source pixels than this are rejected as likely decompression bombs. */
+    val maxSourcePixels: Long = 100_000_000,
+    /** Longest side of the stored image; larger images are downscaled. */
+    val maxStoredDimension: Int = 1280,
+    /** Original bytes are stored as-is only if they fit in this size and need no downscaling. */
+    val maxStoredBytes: Int = 512 * 1024,
+    val previewWidth: Int = 80,
+    val previewHeight: Int = 50,
+    val jpegQuality: Float = 0.85f
+)
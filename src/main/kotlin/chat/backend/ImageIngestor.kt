@@ -0,0 +1,150 @@
+package chat.backend
+
+import java.awt.RenderingHints
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import javax.imageio.IIOImage
+import javax.imageio.ImageIO
+import javax.imageio.ImageWriteParam
+
+/**
+ * Loads attached images off the caller's thread.
+ *
+ * The decoder reads the file in place, limits are checked from the header
+ * before the pixels are decoded, and oversized images are subsampled while
+ * decoding. The storage and preview images are both derived from that single
+ * decode.
+ */
+class ImageIngestor @JvmOverloads constructor(
+    private val config: ImageIngestConfig = ImageIngestConfig(),
+    private val executor: Executor = defaultExecutor()
+) {
+    fun ingest(path: Path): CompletableFuture<ProcessedImage> {
+        return CompletableFuture.supplyAsync({ process(path) }, executor)
+    }
+
+    private fun process(path: Path): ProcessedImage {
+        val fileSize = Files.size(path)
+        if (fileSize > config.maxInputBytes) {
+            throw ImageRejectedException("Image is $fileSize bytes, the limit is ${config.maxInputBytes} bytes")
+        }
+        val decoded = decode(path)
+        val stored = scaleToFit(decoded, config.maxStoredDimension, config.maxStoredDimension)
+        val preview = scaleToFit(stored, config.previewWidth, config.previewHeight)
+        if (fileSize <= config.maxStoredBytes && stored === decoded) {
+            // Small enough and needs no downscaling, so store the original without re-encoding
+            return ProcessedImage(Files.readAllBytes(path), stored.width, stored.height, preview)
+        }
+        return ProcessedImage(encode(stored), stored.width, stored.height, preview)
+    }
+
+    private fun decode(path: Path): BufferedImage {
+        // A file-backed stream reads the file in place, with no temporary cache copy
+        val stream = ImageIO.createImageInputStream(path.toFile())
+            ?: throw ImageRejectedException("Image could not be read")
+        stream.use {
+            val reader = ImageIO.getImageReaders(stream).asSequence().firstOrNull()
+                ?: throw ImageRejectedException("Unsupported image format")
+            try {
+                reader.setInput(stream, true, true)
+                val width = reader.getWidth(0)
+                val height = reader.getHeight(0)
+                if (width.toLong() * height > config.maxSourcePixels) {
+                    throw ImageRejectedException("Image is ${width}x$height, the limit is ${config.maxSourcePixels} pixels")
+                }
+                // Decode at no more than twice the stored size; the final smooth scale does the rest
+                val param = reader.defaultReadParam
+                val step = maxOf(width, height) / (2 * config.maxStoredDimension)
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0)
+                }
+                return reader.read(0, param)
+            } finally {
+                reader.dispose()
+            }
+        }
+    }
+
+    private fun encode(image: BufferedImage): ByteArray {
+        val out = ByteArrayOutputStream()
+        if (image.colorModel.hasAlpha()) {
+            ImageIO.write(image, "png", out)
+            return out.toByteArray()
+        }
+        val rgb = if (image.type == BufferedImage.TYPE_INT_RGB) image else toRgb(image)
+        val writer = ImageIO.getImageWritersByFormatName("jpeg").next()
+        try {
+            ImageIO.createImageOutputStream(out).use { stream ->
+                writer.output = stream
+                val param = writer.defaultWriteParam
+                param.compressionMode = ImageWriteParam.MODE_EXPLICIT
+                param.compressionQuality = config.jpegQuality
+                writer.write(null, IIOImage(rgb, null, null), param)
+            }
+        } finally {
+            writer.dispose()
+        }
+        return out.toByteArray()
+    }
+
+    // The JPEG writer does not accept indexed or custom color models
+    private fun toRgb(image: BufferedImage): BufferedImage {
+        val rgb = BufferedImage(image.width, image.height, BufferedImage.TYPE_INT_RGB)
+        val g = rgb.createGraphics()
+        try {
+            g.drawImage(image, 0, 0, null)
+        } finally {
+            g.dispose()
+        }
+        return rgb
+    }
+
+    companion object {
+        private val threadCounter = AtomicInteger()
+
+        private fun defaultExecutor(): Executor {
+            return Executors.newFixedThreadPool(2) { runnable ->
+                Thread(runnable, "image-ingest-${threadCounter.incrementAndGet()}").apply { isDaemon = true }
+            }
+        }
+
+        /**
+         * Scales [image] to fit in the given bounds, keeping the aspect ratio.
+         * Large reductions are done in halving steps to keep bilinear scaling smooth.
+         */
+        @JvmStatic
+        fun scaleToFit(image: BufferedImage, maxWidth: Int, maxHeight: Int): BufferedImage {
+            val ratio = minOf(maxWidth.toDouble() / image.width, maxHeight.toDouble() / image.height)
+            if (ratio >= 1.0) {
+                return image
+            }
+            val targetWidth = maxOf(1, (image.width * ratio).toInt())
+            val targetHeight = maxOf(1, (image.height * ratio).toInt())
+            val type = if (image.colorModel.hasAlpha()) BufferedImage.TYPE_INT_ARGB else BufferedImage.TYPE_INT_RGB
+
+            var current = image
+            var width = image.width
+            var height = image.height
+            do {
+                width = maxOf(targetWidth, width / 2)
+                height = maxOf(targetHeight, height / 2)
+                val next = BufferedImage(width, height, type)
+                val g = next.createGraphics()
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR)
+                    g.drawImage(current, 0, 0, width, height, null)
+                } finally {
+                    g.dispose()
+                }
+                current = next
+            } while (width != targetWidth || height != targetHeight)
+            return current
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package chat.backend
+
+import java.io.IOException
+
+/**
+ * Thrown when an attached image violates the configured ingest limits or cannot be decoded.
+ */
+class ImageRejectedException(message: String) : IOException(message)
@@ -4,15 +4,29 @@ import java.time.Instant
 
 /**
  * Represents a chat message with optional image attachment.
+ * The text is held in its stored form and decoded each time [text] is read.
  */
 data class Message(
     val id: Long,
     val conversationId: Long,
     val senderName: String,
-    val text: String,
+    val body: MessageText,
     val imageData: ByteArray? = null,
     val timestamp: Instant = Instant.now()
 ) {
+    @JvmOverloads
+    constructor(
+        id: Long,
+        conversationId: Long,
+        senderName: String,
+        text: String,
+        imageData: ByteArray? = null,
+        timestamp: Instant = Instant.now()
+    ) : this(id, conversationId, senderName, MessageText.of(text), imageData, timestamp)
+
+    val text: String
+        get() = body.get()
+
     fun hasImage(): Boolean = imageData != null
 
     override fun toString(): String {
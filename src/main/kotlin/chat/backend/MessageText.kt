@@ -0,0 +1,37 @@
+package chat.backend
+
+/**
+ * Stored form of a message's text. Implementations may keep the text encoded
+ * and decode it on every [get], so callers should not hold on to it.
+ */
+abstract class MessageText {
+    abstract fun get(): String
+
+    /** Length of the text in chars, available without decoding it. */
+    abstract val length: Int
+
+    /** Approximate bytes used to hold the text. */
+    abstract val storedBytes: Int
+
+    private class Plain(private val text: String) : MessageText() {
+        override fun get(): String = text
+
+        override val length: Int
+            get() = text.length
+
+        override val storedBytes: Int
+            get() = stringBytes(text)
+    }
+
+    companion object {
+        @JvmStatic
+        fun of(text: String): MessageText = Plain(text)
+
+        /**
+         * Bytes a [String] uses for its chars: one per char when they all fit in
+         * Latin-1 (compact strings), otherwise two.
+         */
+        @JvmStatic
+        fun stringBytes(text: String): Int = if (text.all { it.code <= 0xFF }) text.length else text.length * 2
+    }
+}
@@ -0,0 +1,11 @@
+package chat.backend
+
+/**
+ * Thrown when reading the change feed from an offset that is no longer retained
+ * or has not been written yet.
+ */
+class OffsetOutOfRangeException(
+    val requestedOffset: Long,
+    val earliestOffset: Long,
+    val nextOffset: Long
+) : RuntimeException("Offset $requestedOffset is outside the retained range [$earliestOffset, $nextOffset]")
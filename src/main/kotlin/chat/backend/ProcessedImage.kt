@@ -0,0 +1,13 @@
+package chat.backend
+
+import java.awt.image.BufferedImage
+
+/**
+ * Result of image ingest: storage-ready encoded bytes plus a decoded preview.
+ */
+class ProcessedImage(
+    val data: ByteArray,
+    val width: Int,
+    val height: Int,
+    val preview: BufferedImage
+)
@@ -0,0 +1,29 @@
+package chat.backend
+
+import java.time.Duration
+
+/**
+ * Send rate limits, applied separately per sender and per conversation.
+ * Rates are messages per second; bursts are how many messages may be sent back to back.
+ */
+data class RateLimitConfig(
+    val senderRate: Double = 5.0,
+    val senderBurst: Int = 10,
+    val conversationRate: Double = 20.0,
+    val conversationBurst: Int = 40,
+    val policy: Policy = Policy.REJECT,
+    /** With [Policy.DELAY], sends that would wait longer than this are rejected instead. */
+    val maxDelay: Duration = Duration.ofMillis(500)
+) {
+    enum class Policy {
+        /** Refuse sends over the limit. */
+        REJECT,
+        /** Hold the send until it fits within the limit, see [ChatService.sendMessageAsync]. */
+        DELAY
+    }
+
+    init {
+        require(senderRate > 0 && conversationRate > 0) { "rates must be positive" }
+        require(senderBurst >= 1 && conversationBurst >= 1) { "bursts must be at least 1" }
+    }
+}
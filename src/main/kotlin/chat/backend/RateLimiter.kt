@@ -0,0 +1,146 @@
+package chat.backend
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+import java.util.function.LongSupplier
+
+/**
+ * Admission control for sends using token buckets keyed by sender and by conversation.
+ *
+ * Each bucket is a single [AtomicLong] holding its theoretical arrival time (the
+ * GCRA form of a token bucket), so admitting a send is two map lookups and two
+ * compare-and-sets with no locks. Counters use [LongAdder] to stay uncontended.
+ *
+ * A bucket that has refilled completely behaves exactly like a new one, so every
+ * [SWEEP_INTERVAL] bucket creations the full buckets are dropped to keep the maps
+ * bounded by the number of recently active senders and conversations.
+ */
+class RateLimiter @JvmOverloads constructor(
+    private val config: RateLimitConfig = RateLimitConfig(),
+    private val clock: LongSupplier = LongSupplier { System.nanoTime() }
+) {
+    private val senderBuckets = ConcurrentHashMap<String, TokenBucket>()
+    private val conversationBuckets = ConcurrentHashMap<Long, TokenBucket>()
+    private val createdSinceSweep = AtomicInteger()
+
+    private val senderInterval = intervalNanos(config.senderRate)
+    private val conversationInterval = intervalNanos(config.conversationRate)
+    private val maxWaitNanos = when (config.policy) {
+        RateLimitConfig.Policy.REJECT -> 0L
+        RateLimitConfig.Policy.DELAY -> config.maxDelay.toNanos()
+    }
+
+    private val admitted = LongAdder()
+    private val rejectedBySender = LongAdder()
+    private val rejectedByConversation = LongAdder()
+    private val delayed = LongAdder()
+    private val totalDelayNanos = LongAdder()
+
+    /**
+     * Takes one token from both the sender's and the conversation's bucket.
+     *
+     * @return [REJECTED] if either bucket is over its limit, otherwise the number of
+     *     nanoseconds the caller must wait before sending (0 when it may send now)
+     */
+    fun acquire(conversationId: Long, senderName: String): Long {
+        val now = clock.asLong
+        if (createdSinceSweep.get() >= SWEEP_INTERVAL) {
+            sweep(now)
+        }
+        val sender = senderBuckets[senderName]
+            ?: senderBuckets.computeIfAbsent(senderName) { newBucket(senderInterval, config.senderBurst, now) }
+        val conversation = conversationBuckets[conversationId]
+            ?: conversationBuckets.computeIfAbsent(conversationId) { newBucket(conversationInterval, config.conversationBurst, now) }
+
+        val senderWait = sender.acquire(now, maxWaitNanos)
+        if (senderWait == REJECTED) {
+            rejectedBySender.increment()
+            return REJECTED
+        }
+        val conversationWait = conversation.acquire(now, maxWaitNanos)
+        if (conversationWait == REJECTED) {
+            sender.refund()
+            rejectedByConversation.increment()
+            return REJECTED
+        }
+
+        admitted.increment()
+        val wait = maxOf(senderWait, conversationWait)
+        if (wait > 0) {
+            delayed.increment()
+            totalDelayNanos.add(wait)
+        }
+        return wait
+    }
+
+    /**
+     * Number of buckets currently held, for both senders and conversations.
+     */
+    fun getBucketCount(): Int = senderBuckets.size + conversationBuckets.size
+
+    private fun newBucket(interval: Long, burst: Int, now: Long): TokenBucket {
+        createdSinceSweep.incrementAndGet()
+        return TokenBucket(interval, burst, now)
+    }
+
+    /**
+     * Drops buckets that are full again. A send racing with the removal may charge the
+     * dropped bucket instead of its replacement, which at most forgives that one token.
+     */
+    private fun sweep(now: Long) {
+        if (createdSinceSweep.getAndSet(0) < SWEEP_INTERVAL) {
+            return // another thread has just swept
+        }
+        senderBuckets.values.removeIf { it.isFull(now) }
+        conversationBuckets.values.removeIf { it.isFull(now) }
+    }
+
+    fun getStats(): RateLimiterStats {
+        return RateLimiterStats(
+            admitted = admitted.sum(),
+            rejectedBySender = rejectedBySender.sum(),
+            rejectedByConversation = rejectedByConversation.sum(),
+            delayed = delayed.sum(),
+            totalDelayNanos = totalDelayNanos.sum()
+        )
+    }
+
+    private class TokenBucket(private val interval: Long, burst: Int, now: Long) {
+        private val tolerance = interval * burst
+        // Time at which the bucket would be full again; "now" means full
+        private val arrival = AtomicLong(now)
+
+        fun acquire(now: Long, maxWait: Long): Long {
+            while (true) {
+                val current = arrival.get()
+                // Compare by difference, System.nanoTime may be negative or wrap
+                val base = if (current - now > 0) current else now
+                val next = base + interval
+                val wait = next - now - tolerance
+                if (wait > maxWait) {
+                    return REJECTED
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return maxOf(0L, wait)
+                }
+            }
+        }
+
+        fun refund() {
+            arrival.addAndGet(-interval)
+        }
+
+        fun isFull(now: Long): Boolean = arrival.get() - now <= 0
+    }
+
+    companion object {
+        const val REJECTED = -1L
+
+        /** Bucket creations between sweeps for buckets that have refilled. */
+        const val SWEEP_INTERVAL = 1024
+
+        private fun intervalNanos(rate: Double): Long = maxOf(1L, (1_000_000_000.0 / rate).toLong())
+    }
+}
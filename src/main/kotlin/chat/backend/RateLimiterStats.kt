@@ -0,0 +1,12 @@
+package chat.backend
+
+/**
+ * Snapshot of rate limiter counters.
+ */
+data class RateLimiterStats(
+    val admitted: Long,
+    val rejectedBySender: Long,
+    val rejectedByConversation: Long,
+    val delayed: Long,
+    val totalDelayNanos: Long
+)
@@ -0,0 +1,23 @@
+package chat.backend.analytics
+
+import java.time.Duration
+
+/**
+ * Settings for batch and rolling message analytics.
+ */
+data class AnalyticsConfig(
+    /** Time bucket size of [MessageStats.messageRate] in batch reports. */
+    val rateBucket: Duration = Duration.ofMinutes(1),
+    val topSenderCount: Int = 10,
+    /** Conversations longer than this are split into chunks of about this many messages. */
+    val chunkSize: Int = 4096,
+    /** Rolling windows cover [windowBuckets] buckets of [windowBucket] each. */
+    val windowBucket: Duration = Duration.ofSeconds(10),
+    val windowBuckets: Int = 60
+) {
+    init {
+        require(!rateBucket.isNegative && !rateBucket.isZero) { "rateBucket must be positive" }
+        require(!windowBucket.isNegative && !windowBucket.isZero) { "windowBucket must be positive" }
+        require(chunkSize > 0 && windowBuckets > 0 && topSenderCount >= 0) { "sizes must be positive" }
+    }
+}
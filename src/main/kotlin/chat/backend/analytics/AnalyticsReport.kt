@@ -0,0 +1,10 @@
+package chat.backend.analytics
+
+/**
+ * Result of a full analytics pass over all conversations.
+ */
+data class AnalyticsReport(
+    val global: MessageStats,
+    val conversations: Map<Long, MessageStats>,
+    val computeNanos: Long
+)
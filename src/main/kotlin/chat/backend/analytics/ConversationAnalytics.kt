@@ -0,0 +1,122 @@
+package chat.backend.analytics
+
+import chat.backend.Conversation
+import chat.backend.Message
+import chat.backend.repository.ConversationRepository
+import chat.backend.repository.MessageRepository
+import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+
+/**
+ * Computes message statistics per conversation and globally.
+ *
+ * Batch reports fork/join across conversations and, for long conversations,
+ * across chunks of their history. They work on the snapshot lists returned by
+ * the message repository, so concurrent sends are never blocked.
+ *
+ * The incremental mode keeps [RollingWindow]s up to date from the send path
+ * via [record], so recent activity can be read without rescanning history.
+ */
+class ConversationAnalytics @JvmOverloads constructor(
+    private val conversationRepository: ConversationRepository,
+    private val messageRepository: MessageRepository,
+    private val config: AnalyticsConfig = AnalyticsConfig(),
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+    private val clock: Clock = Clock.systemUTC()
+) {
+    private val rateBucketMillis = config.rateBucket.toMillis()
+    private val windowBucketMillis = config.windowBucket.toMillis()
+    private val globalWindow = RollingWindow(windowBucketMillis, config.windowBuckets)
+    private val conversationWindows = ConcurrentHashMap<Long, RollingWindow>()
+
+    fun computeReport(): AnalyticsReport {
+        val start = System.nanoTime()
+        val conversations = conversationRepository.findAll()
+        val partials = if (conversations.isEmpty()) emptyMap() else pool.invoke(ConversationsTask(conversations, 0, conversations.size))
+
+        val global = StatsAccumulator(rateBucketMillis)
+        val perConversation = LinkedHashMap<Long, MessageStats>()
+        for (conversation in conversations) {
+            val partial = partials[conversation.id] ?: continue
+            perConversation[conversation.id] = partial.toStats(conversation.id, config.topSenderCount)
+            global.merge(partial)
+        }
+        return AnalyticsReport(global.toStats(null, config.topSenderCount), perConversation, System.nanoTime() - start)
+    }
+
+    fun computeStats(conversationId: Long): MessageStats? {
+        conversationRepository.findById(conversationId) ?: return null
+        return pool.invoke(ConversationTask(conversationId)).toStats(conversationId, config.topSenderCount)
+    }
+
+    /**
+     * Adds a just-sent message to the rolling windows.
+     */
+    fun record(message: Message) {
+        globalWindow.record(message)
+        conversationWindows.computeIfAbsent(message.conversationId) {
+            RollingWindow(windowBucketMillis, config.windowBuckets)
+        }.record(message)
+    }
+
+    /**
+     * Statistics over the rolling window for one conversation; empty if it has no recent messages.
+     */
+    fun rollingStats(conversationId: Long): MessageStats {
+        val window = conversationWindows[conversationId]
+            ?: return StatsAccumulator(windowBucketMillis).toStats(conversationId, config.topSenderCount)
+        return window.snapshot(conversationId, clock.millis(), config.topSenderCount)
+    }
+
+    fun globalRollingStats(): MessageStats {
+        return globalWindow.snapshot(null, clock.millis(), config.topSenderCount)
+    }
+
+    private inner class ConversationsTask(
+        private val conversations: List<Conversation>,
+        private val from: Int,
+        private val to: Int
+    ) : RecursiveTask<Map<Long, StatsAccumulator>>() {
+        override fun compute(): Map<Long, StatsAccumulator> {
+            if (to - from == 1) {
+                val id = conversations[from].id
+                return mapOf(id to ConversationTask(id).compute())
+            }
+            val middle = (from + to) ushr 1
+            val left = ConversationsTask(conversations, from, middle)
+            left.fork()
+            val right = ConversationsTask(conversations, middle, to).compute()
+            return left.join() + right
+        }
+    }
+
+    private inner class ConversationTask(private val conversationId: Long) : RecursiveTask<StatsAccumulator>() {
+        public override fun compute(): StatsAccumulator {
+            val messages = messageRepository.findByConversationId(conversationId)
+            return ChunkTask(messages, 0, messages.size).compute()
+        }
+    }
+
+    private inner class ChunkTask(
+        private val messages: List<Message>,
+        private val from: Int,
+        private val to: Int
+    ) : RecursiveTask<StatsAccumulator>() {
+        public override fun compute(): StatsAccumulator {
+            if (to - from <= config.chunkSize) {
+                val stats = StatsAccumulator(rateBucketMillis)
+                for (i in from until to) {
+                    stats.add(messages[i])
+                }
+                return stats
+            }
+            val middle = (from + to) ushr 1
+            val left = ChunkTask(messages, from, middle)
+            left.fork()
+            val right = ChunkTask(messages, middle, to).compute()
+            return left.join().merge(right)
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package chat.backend.analytics
+
+import java.time.Instant
+import java.util.SortedMap
+
+/**
+ * Aggregated message statistics for one conversation, or for all of them when
+ * [conversationId] is null.
+ */
+data class MessageStats(
+    val conversationId: Long?,
+    val messageCount: Long,
+    val imageCount: Long,
+    val textChars: Long,
+    /** Most active senders with their message counts, busiest first. */
+    val topSenders: Map<String, Long>,
+    /** Message counts per text length bucket, see [SIZE_BUCKET_BOUNDS]. */
+    val sizeHistogram: List<Long>,
+    /** Message counts per time bucket, keyed by bucket start. */
+    val messageRate: SortedMap<Instant, Long>
+) {
+    val imageShare: Double
+        get() = if (messageCount == 0L) 0.0 else imageCount.toDouble() / messageCount
+
+    val averageLength: Double
+        get() = if (messageCount == 0L) 0.0 else textChars.toDouble() / messageCount
+
+    companion object {
+        /**
+         * Upper bounds (exclusive, in chars) of the size histogram buckets;
+         * the last histogram bucket holds everything longer.
+         */
+        @JvmField
+        val SIZE_BUCKET_BOUNDS: List<Int> = listOf(16, 64, 256, 1024, 4096)
+    }
+}
@@ -0,0 +1,81 @@
+package chat.backend.analytics
+
+import chat.backend.Message
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Ring of time buckets covering the most recent `bucketCount * bucketMillis`.
+ * A bucket is replaced when the ring wraps around to it, so recording is O(1) and
+ * old data ages out without a sweep.
+ *
+ * Recording takes no locks: bucket counters are [LongAdder]s, senders are counted
+ * in a [ConcurrentHashMap], and an aged-out bucket is swapped for a fresh one with
+ * a compare-and-set. Concurrent sends in the same bucket therefore never wait on
+ * each other. A snapshot taken while sends are in flight may miss some of them.
+ */
+internal class RollingWindow(private val bucketMillis: Long, bucketCount: Int) {
+    private val buckets = AtomicReferenceArray<Bucket>(bucketCount)
+
+    fun record(message: Message) {
+        val index = Math.floorDiv(message.timestamp.toEpochMilli(), bucketMillis)
+        val slot = Math.floorMod(index, buckets.length().toLong()).toInt()
+        while (true) {
+            val bucket = buckets.get(slot)
+            if (bucket != null && bucket.index == index) {
+                bucket.add(message)
+                return
+            }
+            if (bucket != null && bucket.index > index) {
+                return // older than the window
+            }
+            buckets.compareAndSet(slot, bucket, Bucket(index))
+        }
+    }
+
+    fun snapshot(conversationId: Long?, nowMillis: Long, topSenderCount: Int): MessageStats {
+        val current = Math.floorDiv(nowMillis, bucketMillis)
+        val oldest = current - buckets.length() + 1
+        val merged = StatsAccumulator(bucketMillis)
+        for (slot in 0 until buckets.length()) {
+            val bucket = buckets.get(slot) ?: continue
+            if (bucket.index in oldest..current) {
+                bucket.addTo(merged)
+            }
+        }
+        return merged.toStats(conversationId, topSenderCount)
+    }
+
+    private class Bucket(val index: Long) {
+        private val messages = LongAdder()
+        private val images = LongAdder()
+        private val textChars = LongAdder()
+        private val senders = ConcurrentHashMap<String, LongAdder>()
+        private val sizeHistogram = Array(MessageStats.SIZE_BUCKET_BOUNDS.size + 1) { LongAdder() }
+
+        fun add(message: Message) {
+            val length = message.body.length
+            messages.increment()
+            if (message.hasImage()) {
+                images.increment()
+            }
+            textChars.add(length.toLong())
+            val sender = senders[message.senderName]
+                ?: senders.computeIfAbsent(message.senderName) { LongAdder() }
+            sender.increment()
+            sizeHistogram[StatsAccumulator.sizeBucket(length)].increment()
+        }
+
+        fun addTo(stats: StatsAccumulator) {
+            stats.addCounts(
+                rateBucket = index,
+                messages = messages.sum(),
+                images = images.sum(),
+                textChars = textChars.sum(),
+                senders = senders.mapValues { it.value.sum() },
+                sizeHistogram = LongArray(sizeHistogram.size) { sizeHistogram[it].sum() }
+            )
+        }
+    }
+}
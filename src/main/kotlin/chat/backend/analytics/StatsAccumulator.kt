@@ -0,0 +1,94 @@
+package chat.backend.analytics
+
+import chat.backend.Message
+import java.time.Instant
+import java.util.TreeMap
+
+/**
+ * Mutable partial aggregate. Partials built over disjoint message ranges are
+ * combined with [merge], which is what lets the work be split across threads.
+ * Not thread-safe.
+ */
+internal class StatsAccumulator(private val rateBucketMillis: Long) {
+    var messageCount = 0L
+        private set
+    private var imageCount = 0L
+    private var textChars = 0L
+    private val senders = HashMap<String, Long>()
+    private val sizeHistogram = LongArray(MessageStats.SIZE_BUCKET_BOUNDS.size + 1)
+    private val rate = TreeMap<Long, Long>()
+
+    fun add(message: Message) {
+        // Uses the stored length so compressed text is never decoded
+        val length = message.body.length
+        messageCount++
+        if (message.hasImage()) {
+            imageCount++
+        }
+        textChars += length
+        senders.merge(message.senderName, 1L, Long::plus)
+        sizeHistogram[sizeBucket(length)]++
+        rate.merge(Math.floorDiv(message.timestamp.toEpochMilli(), rateBucketMillis), 1L, Long::plus)
+    }
+
+    /**
+     * Adds counts gathered elsewhere for messages that all fall in [rateBucket].
+     */
+    fun addCounts(rateBucket: Long, messages: Long, images: Long, textChars: Long,
+                  senders: Map<String, Long>, sizeHistogram: LongArray) {
+        if (messages == 0L) {
+            return
+        }
+        messageCount += messages
+        imageCount += images
+        this.textChars += textChars
+        senders.forEach { (sender, count) -> this.senders.merge(sender, count, Long::plus) }
+        for (i in this.sizeHistogram.indices) {
+            this.sizeHistogram[i] += sizeHistogram[i]
+        }
+        rate.merge(rateBucket, messages, Long::plus)
+    }
+
+    fun merge(other: StatsAccumulator): StatsAccumulator {
+        messageCount += other.messageCount
+        imageCount += other.imageCount
+        textChars += other.textChars
+        other.senders.forEach { (sender, count) -> senders.merge(sender, count, Long::plus) }
+        for (i in sizeHistogram.indices) {
+            sizeHistogram[i] += other.sizeHistogram[i]
+        }
+        other.rate.forEach { (bucket, count) -> rate.merge(bucket, count, Long::plus) }
+        return this
+    }
+
+    fun toStats(conversationId: Long?, topSenderCount: Int): MessageStats {
+        val topSenders = LinkedHashMap<String, Long>()
+        senders.entries
+            .sortedWith(compareByDescending<Map.Entry<String, Long>> { it.value }.thenBy { it.key })
+            .take(topSenderCount)
+            .forEach { topSenders[it.key] = it.value }
+        val messageRate = TreeMap<Instant, Long>()
+        rate.forEach { (bucket, count) -> messageRate[Instant.ofEpochMilli(bucket * rateBucketMillis)] = count }
+        return MessageStats(
+            conversationId = conversationId,
+            messageCount = messageCount,
+            imageCount = imageCount,
+            textChars = textChars,
+            topSenders = topSenders,
+            sizeHistogram = sizeHistogram.toList(),
+            messageRate = messageRate
+        )
+    }
+
+    companion object {
+        fun sizeBucket(length: Int): Int {
+            val bounds = MessageStats.SIZE_BUCKET_BOUNDS
+            for (i in bounds.indices) {
+                if (length < bounds[i]) {
+                    return i
+                }
+            }
+            return bounds.size
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package chat.backend.repository
+
+import chat.backend.ChangeEvent
+import chat.backend.Message
+
+interface ChangeFeed {
+    fun appendConversationCreated(conversationId: Long, participants: List<String>): ChangeEvent
+    fun appendParticipantAdded(conversationId: Long, userName: String): ChangeEvent
+    fun appendMessageSent(message: Message): ChangeEvent
+    fun read(fromOffset: Long, maxEvents: Int): List<ChangeEvent>
+    fun poll(fromOffset: Long, maxEvents: Int, timeoutMillis: Long): List<ChangeEvent>
+    fun earliestOffset(): Long
+    fun nextOffset(): Long
+    fun commit(consumerId: String, offset: Long)
+    fun committedOffset(consumerId: String): Long?
+}
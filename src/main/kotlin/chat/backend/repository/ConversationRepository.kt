@@ -7,5 +7,9 @@ interface ConversationRepository {
     fun findById(id: Long): Conversation?
     fun findAll(): List<Conversation>
     fun findByParticipant(userName: String): List<Conversation>
+    /**
+     * Returns true only if the user was added, false if the conversation does not exist
+     * or the user already takes part in it.
+     */
     fun addParticipant(conversationId: Long, userName: String): Boolean
 }
@@ -0,0 +1,19 @@
+package chat.backend.repository
+
+import chat.backend.Conversation
+import chat.backend.ConversationSummary
+import chat.backend.ConversationSummaryEvent
+import chat.backend.Message
+
+interface ConversationSummaryRepository {
+    /**
+     * Adds the summary of a conversation; [lastMessage] and [messageCount] describe
+     * history it already has, as when summarizing an existing repository.
+     */
+    fun insert(conversation: Conversation, lastMessage: Message? = null, messageCount: Int = 0): ConversationSummaryEvent
+    fun recordMessage(message: Message, participantCount: Int): ConversationSummaryEvent?
+    fun updateParticipantCount(conversationId: Long, participantCount: Int): ConversationSummaryEvent?
+    fun findById(conversationId: Long): ConversationSummary?
+    fun findPage(offset: Int, limit: Int): List<ConversationSummary>
+    fun count(): Int
+}
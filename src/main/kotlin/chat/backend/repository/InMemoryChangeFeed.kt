@@ -0,0 +1,121 @@
+package chat.backend.repository
+
+import chat.backend.ChangeEvent
+import chat.backend.Message
+import chat.backend.OffsetOutOfRangeException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Change feed kept in a ring buffer holding the last [retention] events.
+ * The event at offset `o` lives in slot `o % retention`, so reads at any retained
+ * offset are direct lookups. Committed consumer offsets are kept separately and
+ * are not affected by retention.
+ */
+class InMemoryChangeFeed(
+    private val retention: Int = 100_000
+) : ChangeFeed {
+    private val events = arrayOfNulls<ChangeEvent>(retention)
+    private var next = 0L
+    private val lock = ReentrantLock()
+    private val appended = lock.newCondition()
+    private val committed = ConcurrentHashMap<String, Long>()
+
+    init {
+        require(retention > 0) { "retention must be positive" }
+    }
+
+    override fun appendConversationCreated(conversationId: Long, participants: List<String>): ChangeEvent {
+        return append { offset ->
+            ChangeEvent(offset, ChangeEvent.Type.CONVERSATION_CREATED, conversationId, participants = participants.toList())
+        }
+    }
+
+    override fun appendParticipantAdded(conversationId: Long, userName: String): ChangeEvent {
+        return append { offset ->
+            ChangeEvent(offset, ChangeEvent.Type.PARTICIPANT_ADDED, conversationId, userName = userName)
+        }
+    }
+
+    override fun appendMessageSent(message: Message): ChangeEvent {
+        return append { offset ->
+            ChangeEvent(offset, ChangeEvent.Type.MESSAGE_SENT, message.conversationId, message = message,
+                userName = message.senderName, timestamp = message.timestamp)
+        }
+    }
+
+    override fun read(fromOffset: Long, maxEvents: Int): List<ChangeEvent> {
+        require(maxEvents > 0) { "maxEvents must be positive" }
+        lock.withLock {
+            return readLocked(fromOffset, maxEvents)
+        }
+    }
+
+    /**
+     * Like [read], but waits up to [timeoutMillis] for new events when the consumer is caught up.
+     */
+    override fun poll(fromOffset: Long, maxEvents: Int, timeoutMillis: Long): List<ChangeEvent> {
+        require(maxEvents > 0) { "maxEvents must be positive" }
+        var remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        lock.withLock {
+            while (fromOffset == next && remaining > 0) {
+                remaining = appended.awaitNanos(remaining)
+            }
+            return readLocked(fromOffset, maxEvents)
+        }
+    }
+
+    override fun earliestOffset(): Long {
+        lock.withLock {
+            return earliestLocked()
+        }
+    }
+
+    override fun nextOffset(): Long {
+        lock.withLock {
+            return next
+        }
+    }
+
+    /**
+     * Records [offset] as the next offset [consumerId] will read.
+     */
+    override fun commit(consumerId: String, offset: Long) {
+        val nextOffset = nextOffset()
+        require(offset in 0..nextOffset) { "Offset $offset is beyond the end of the feed ($nextOffset)" }
+        committed[consumerId] = offset
+    }
+
+    override fun committedOffset(consumerId: String): Long? {
+        return committed[consumerId]
+    }
+
+    private inline fun append(create: (Long) -> ChangeEvent): ChangeEvent {
+        lock.withLock {
+            val event = create(next)
+            events[slot(next)] = event
+            next++
+            appended.signalAll()
+            return event
+        }
+    }
+
+    private fun readLocked(fromOffset: Long, maxEvents: Int): List<ChangeEvent> {
+        val earliest = earliestLocked()
+        if (fromOffset < earliest || fromOffset > next) {
+            throw OffsetOutOfRangeException(fromOffset, earliest, next)
+        }
+        val count = minOf(maxEvents.toLong(), next - fromOffset).toInt()
+        val batch = ArrayList<ChangeEvent>(count)
+        for (offset in fromOffset until fromOffset + count) {
+            batch.add(events[slot(offset)]!!)
+        }
+        return batch
+    }
+
+    private fun earliestLocked(): Long = maxOf(0L, next - retention)
+
+    private fun slot(offset: Long): Int = (offset % retention).toInt()
+}
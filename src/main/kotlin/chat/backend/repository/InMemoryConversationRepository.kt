@@ -33,7 +33,6 @@ class InMemoryConversationRepository : ConversationRepository {
 
     override fun addParticipant(conversationId: Long, userName: String): Boolean {
         val conversation = conversations[conversationId] ?: return false
-        conversation.addParticipant(userName)
-        return true
+        return conversation.addParticipant(userName)
     }
 }
@@ -0,0 +1,103 @@
+package chat.backend.repository
+
+import chat.backend.Conversation
+import chat.backend.ConversationSummary
+import chat.backend.ConversationSummaryEvent
+import chat.backend.Message
+import java.time.Instant
+
+/**
+ * Keeps summaries in a list sorted by [ConversationSummary.BY_RECENT_ACTIVITY],
+ * so pages are plain sublist copies and every change reports its list positions.
+ */
+class InMemoryConversationSummaryRepository : ConversationSummaryRepository {
+    private val sorted = ArrayList<ConversationSummary>()
+    private val byId = HashMap<Long, ConversationSummary>()
+    private val lock = Any()
+
+    override fun insert(conversation: Conversation, lastMessage: Message?, messageCount: Int): ConversationSummaryEvent {
+        val summary = ConversationSummary(
+            conversationId = conversation.id,
+            name = conversation.name,
+            lastMessage = lastMessage,
+            lastMessagePreview = lastMessage?.let { ConversationSummary.previewOf(it) },
+            lastActivity = lastMessage?.timestamp ?: Instant.now(),
+            messageCount = messageCount,
+            participantCount = conversation.participants.size
+        )
+        synchronized(lock) {
+            val existing = byId[conversation.id]
+            if (existing != null) {
+                return replace(existing, summary)
+            }
+            val index = insertionPoint(summary)
+            sorted.add(index, summary)
+            byId[summary.conversationId] = summary
+            return ConversationSummaryEvent(ConversationSummaryEvent.Type.INSERTED, summary, -1, index)
+        }
+    }
+
+    override fun recordMessage(message: Message, participantCount: Int): ConversationSummaryEvent? {
+        val preview = ConversationSummary.previewOf(message)
+        synchronized(lock) {
+            val existing = byId[message.conversationId] ?: return null
+            // Concurrent sends may be recorded out of order, so never let the summary go backwards
+            val lastActivity = maxOf(message.timestamp, existing.lastActivity)
+            val newest = existing.lastMessage == null || message.id > existing.lastMessage.id
+            return replace(existing, existing.copy(
+                lastMessage = if (newest) message else existing.lastMessage,
+                lastMessagePreview = if (newest) preview else existing.lastMessagePreview,
+                lastActivity = lastActivity,
+                messageCount = existing.messageCount + 1,
+                participantCount = participantCount
+            ))
+        }
+    }
+
+    override fun updateParticipantCount(conversationId: Long, participantCount: Int): ConversationSummaryEvent? {
+        synchronized(lock) {
+            val existing = byId[conversationId] ?: return null
+            if (existing.participantCount == participantCount) {
+                return null
+            }
+            return replace(existing, existing.copy(participantCount = participantCount))
+        }
+    }
+
+    override fun findById(conversationId: Long): ConversationSummary? {
+        synchronized(lock) {
+            return byId[conversationId]
+        }
+    }
+
+    override fun findPage(offset: Int, limit: Int): List<ConversationSummary> {
+        require(offset >= 0 && limit >= 0) { "offset and limit must not be negative" }
+        synchronized(lock) {
+            if (offset >= sorted.size) {
+                return emptyList()
+            }
+            return ArrayList(sorted.subList(offset, minOf(sorted.size, offset + limit)))
+        }
+    }
+
+    override fun count(): Int {
+        synchronized(lock) {
+            return sorted.size
+        }
+    }
+
+    private fun replace(old: ConversationSummary, new: ConversationSummary): ConversationSummaryEvent {
+        val fromIndex = sorted.binarySearch(old, ConversationSummary.BY_RECENT_ACTIVITY)
+        sorted.removeAt(fromIndex)
+        val toIndex = insertionPoint(new)
+        sorted.add(toIndex, new)
+        byId[new.conversationId] = new
+        val type = if (fromIndex == toIndex) ConversationSummaryEvent.Type.UPDATED else ConversationSummaryEvent.Type.MOVED
+        return ConversationSummaryEvent(type, new, fromIndex, toIndex)
+    }
+
+    private fun insertionPoint(summary: ConversationSummary): Int {
+        val index = sorted.binarySearch(summary, ConversationSummary.BY_RECENT_ACTIVITY)
+        return if (index >= 0) index else -(index + 1)
+    }
+}
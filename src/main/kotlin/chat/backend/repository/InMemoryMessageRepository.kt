@@ -1,20 +1,28 @@
 package chat.backend.repository
 
+import chat.backend.CompressionStats
 import chat.backend.Message
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.atomic.AtomicLong
 
-class InMemoryMessageRepository : MessageRepository {
+/**
+ * Keeps messages in memory with their text compressed per conversation.
+ */
+class InMemoryMessageRepository(
+    private val trainDictionaries: Boolean = true
+) : MessageRepository {
     private val messages = ConcurrentHashMap<Long, CopyOnWriteArrayList<Message>>()
+    private val compressors = ConcurrentHashMap<Long, TextCompressor>()
     private val idGenerator = AtomicLong(1)
 
-    override fun create(conversationId: Long, senderName: String, text: String): Message {
+    override fun create(conversationId: Long, senderName: String, text: String, imageData: ByteArray?): Message {
         val message = Message(
             id = idGenerator.incrementAndGet(),
             conversationId = conversationId,
             senderName = senderName,
-            text = text,
+            body = compressor(conversationId).compress(text),
+            imageData = imageData,
         )
         messages.computeIfAbsent(conversationId) { CopyOnWriteArrayList() }.add(message)
         return message
@@ -24,7 +32,16 @@ class InMemoryMessageRepository : MessageRepository {
         return messages[conversationId]?.toList() ?: emptyList()
     }
 
+    override fun getCompressionStats(conversationId: Long): CompressionStats? {
+        return compressors[conversationId]?.getStats()
+    }
+
     fun initConversation(conversationId: Long) {
         messages.computeIfAbsent(conversationId) { CopyOnWriteArrayList() }
+        compressor(conversationId)
+    }
+
+    private fun compressor(conversationId: Long): TextCompressor {
+        return compressors.computeIfAbsent(conversationId) { TextCompressor(it, trainDictionaries) }
     }
 }
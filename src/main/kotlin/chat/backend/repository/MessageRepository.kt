@@ -1,8 +1,10 @@
 package chat.backend.repository
 
+import chat.backend.CompressionStats
 import chat.backend.Message
 
 interface MessageRepository {
-    fun create(conversationId: Long, senderName: String, text: String): Message
+    fun create(conversationId: Long, senderName: String, text: String, imageData: ByteArray? = null): Message
     fun findByConversationId(conversationId: Long): List<Message>
+    fun getCompressionStats(conversationId: Long): CompressionStats?
 }
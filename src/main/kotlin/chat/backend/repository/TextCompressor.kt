@@ -0,0 +1,184 @@
+package chat.backend.repository
+
+import chat.backend.CompressionStats
+import chat.backend.MessageText
+import java.util.concurrent.atomic.LongAdder
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Compresses the text of one conversation's messages with raw deflate at its
+ * fastest level.
+ *
+ * Short chat lines barely compress on their own, so once enough messages have
+ * been seen the compressor can train a preset dictionary from their most
+ * frequent words and lines. Each compressed text keeps a reference to the
+ * dictionary it was written with, so a later dictionary never breaks older text.
+ */
+class TextCompressor(
+    private val conversationId: Long,
+    private val trainDictionary: Boolean = true
+) {
+    @Volatile
+    private var dictionary: ByteArray? = null
+    private var samples: MutableList<String>? = if (trainDictionary) ArrayList() else null
+    private var sampleChars = 0
+
+    private val messages = LongAdder()
+    private val compressedMessages = LongAdder()
+    private val rawBytes = LongAdder()
+    private val storedBytes = LongAdder()
+    private val compressNanos = LongAdder()
+    private val decompressNanos = LongAdder()
+    private val decompressions = LongAdder()
+
+    fun compress(text: String): MessageText {
+        val start = System.nanoTime()
+        val dict = dictionary
+        val textBytes = MessageText.stringBytes(text)
+        val result = if (textBytes < (if (dict != null) MIN_BYTES_WITH_DICTIONARY else MIN_BYTES)) {
+            MessageText.of(text)
+        } else {
+            deflate(text, textBytes, dict)
+        }
+        compressNanos.add(System.nanoTime() - start)
+
+        messages.increment()
+        rawBytes.add(textBytes.toLong())
+        storedBytes.add(if (result is CompressedText) result.storedBytes.toLong() else textBytes.toLong())
+        if (result is CompressedText) {
+            compressedMessages.increment()
+        }
+        if (dict == null && samples != null) {
+            sample(text)
+        }
+        return result
+    }
+
+    fun getStats(): CompressionStats {
+        return CompressionStats(
+            conversationId = conversationId,
+            messages = messages.sum(),
+            compressedMessages = compressedMessages.sum(),
+            rawBytes = rawBytes.sum(),
+            storedBytes = storedBytes.sum(),
+            compressNanos = compressNanos.sum(),
+            decompressNanos = decompressNanos.sum(),
+            decompressions = decompressions.sum(),
+            dictionaryTrained = dictionary != null
+        )
+    }
+
+    private fun deflate(text: String, textBytes: Int, dict: ByteArray?): MessageText {
+        val utf8 = text.toByteArray(Charsets.UTF_8)
+        val deflater = DEFLATER.get()
+        deflater.reset()
+        if (dict != null) {
+            deflater.setDictionary(dict)
+        }
+        deflater.setInput(utf8)
+        deflater.finish()
+        // Anything not smaller than the plain string is not worth keeping compressed
+        val buffer = ByteArray(minOf(utf8.size, textBytes))
+        val length = deflater.deflate(buffer)
+        if (!deflater.finished() || length >= textBytes - CompressedText.OVERHEAD) {
+            return MessageText.of(text)
+        }
+        return CompressedText(buffer.copyOf(length), utf8.size, text.length, dict, this)
+    }
+
+    private fun sample(text: String) {
+        synchronized(this) {
+            val pending = samples ?: return
+            pending.add(text)
+            sampleChars += text.length
+            if (pending.size < DICTIONARY_SAMPLE_MESSAGES && sampleChars < DICTIONARY_SAMPLE_CHARS) {
+                return
+            }
+            samples = null
+            dictionary = buildDictionary(pending)
+        }
+    }
+
+    /**
+     * Builds a dictionary from the words and whole short lines that repeat across
+     * the samples, weighted by how many bytes they would save. Deflate matches
+     * nearer content more cheaply, so the most valuable entries go last.
+     */
+    private fun buildDictionary(texts: List<String>): ByteArray? {
+        val counts = HashMap<String, Int>()
+        for (sample in texts) {
+            if (sample.length <= MAX_DICTIONARY_LINE) {
+                counts.merge(sample, 1, Int::plus)
+            }
+            for (word in sample.split(WHITESPACE)) {
+                if (word.length >= 3 && word != sample) {
+                    counts.merge(word, 1, Int::plus)
+                }
+            }
+        }
+        val entries = counts.entries
+            .filter { it.value > 1 }
+            .sortedByDescending { it.value * it.key.length }
+        val selected = ArrayList<String>()
+        var size = 0
+        for (entry in entries) {
+            val bytes = entry.key.toByteArray(Charsets.UTF_8).size + 1
+            if (size + bytes > MAX_DICTIONARY_BYTES) {
+                break
+            }
+            selected.add(entry.key)
+            size += bytes
+        }
+        if (selected.isEmpty()) {
+            return null
+        }
+        return selected.asReversed().joinToString(" ").toByteArray(Charsets.UTF_8)
+    }
+
+    private class CompressedText(
+        private val data: ByteArray,
+        private val utf8Length: Int,
+        override val length: Int,
+        private val dictionary: ByteArray?,
+        private val owner: TextCompressor
+    ) : MessageText() {
+        override fun get(): String {
+            val start = System.nanoTime()
+            val inflater = INFLATER.get()
+            inflater.reset()
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary)
+            }
+            inflater.setInput(data)
+            val utf8 = ByteArray(utf8Length)
+            inflater.inflate(utf8)
+            val text = String(utf8, Charsets.UTF_8)
+            owner.decompressNanos.add(System.nanoTime() - start)
+            owner.decompressions.increment()
+            return text
+        }
+
+        override val storedBytes: Int
+            get() = data.size + OVERHEAD
+
+        companion object {
+            // Object header, fields and array header, roughly
+            const val OVERHEAD = 48
+        }
+    }
+
+    companion object {
+        // Below these sizes the compressed form cannot beat its own overhead
+        private const val MIN_BYTES = 128
+        private const val MIN_BYTES_WITH_DICTIONARY = 64
+        private const val DICTIONARY_SAMPLE_MESSAGES = 200
+        private const val DICTIONARY_SAMPLE_CHARS = 64 * 1024
+        private const val MAX_DICTIONARY_BYTES = 8 * 1024
+        private const val MAX_DICTIONARY_LINE = 80
+        private val WHITESPACE = Regex("\\s+")
+
+        private val DEFLATER = ThreadLocal.withInitial { Deflater(Deflater.BEST_SPEED, true) }
+        private val INFLATER = ThreadLocal.withInitial { Inflater(true) }
+    }
+}
@@ -0,0 +1,44 @@
+package chat.backend
+
+import chat.backend.repository.InMemoryConversationRepository
+import chat.backend.repository.InMemoryMessageRepository
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class ChatServiceTest {
+
+    @Test
+    fun summarizesConversationsAlreadyInTheRepository() {
+        val conversations = InMemoryConversationRepository()
+        val messages = InMemoryMessageRepository()
+        val quiet = conversations.create("quiet", listOf("alice"))
+        val busy = conversations.create("busy", listOf("alice", "bob"))
+        messages.create(busy.id, "bob", "first")
+        messages.create(busy.id, "alice", "second")
+
+        val service = ChatService(conversations, messages)
+
+        assertEquals(2, service.getConversationCount())
+        val summary = service.getConversationSummary(busy.id)!!
+        assertEquals(2, summary.messageCount)
+        assertEquals("alice: second", summary.lastMessagePreview)
+        assertEquals(0, service.getConversationSummary(quiet.id)!!.messageCount)
+    }
+
+    @Test
+    fun acceptsChangesToConversationsAlreadyInTheRepository() {
+        val conversations = InMemoryConversationRepository()
+        val existing = conversations.create("existing", listOf("alice"))
+
+        val service = ChatService(conversations, InMemoryMessageRepository())
+
+        assertNotNull(service.sendMessage(existing.id, "bob", "hello"))
+        assertTrue(service.addParticipant(existing.id, "carol"))
+        val events = service.readChanges(0, 10)
+        assertEquals(listOf(ChangeEvent.Type.CONVERSATION_CREATED, ChangeEvent.Type.PARTICIPANT_ADDED,
+            ChangeEvent.Type.MESSAGE_SENT, ChangeEvent.Type.PARTICIPANT_ADDED), events.map { it.type })
+        assertEquals(listOf("alice"), events[0].participants)
+    }
+}
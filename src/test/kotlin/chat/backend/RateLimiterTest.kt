@@ -0,0 +1,99 @@
+package chat.backend
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import java.util.function.LongSupplier
+
+class RateLimiterTest {
+    private var now = 0L
+    private val clock = LongSupplier { now }
+
+    private fun limiter(config: RateLimitConfig) = RateLimiter(config, clock)
+
+    @Test
+    fun admitsBurstThenRejects() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 10))
+
+        repeat(10) { assertEquals(0L, limiter.acquire(1, "alice")) }
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(1, "alice"))
+
+        val stats = limiter.getStats()
+        assertEquals(10L, stats.admitted)
+        assertEquals(1L, stats.rejectedBySender)
+    }
+
+    @Test
+    fun refillsOneTokenPerInterval() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 10))
+        repeat(10) { limiter.acquire(1, "alice") }
+
+        now += 199_000_000
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(1, "alice"))
+        now += 1_000_000
+        assertEquals(0L, limiter.acquire(1, "alice"))
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(1, "alice"))
+
+        // Idle long enough and the whole burst is available again
+        now += 10_000_000_000
+        repeat(10) { assertEquals(0L, limiter.acquire(1, "alice")) }
+    }
+
+    @Test
+    fun senderLimitIsIndependentOfConversation() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 2))
+        repeat(2) { assertEquals(0L, limiter.acquire(1, "alice")) }
+
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(2, "alice"))
+        assertEquals(0L, limiter.acquire(1, "bob"))
+    }
+
+    @Test
+    fun delayPolicyReturnsWaitUpToMaxDelay() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 1,
+            policy = RateLimitConfig.Policy.DELAY, maxDelay = Duration.ofMillis(500)))
+
+        assertEquals(0L, limiter.acquire(1, "alice"))
+        assertEquals(200_000_000L, limiter.acquire(1, "alice"))
+        assertEquals(400_000_000L, limiter.acquire(1, "alice"))
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(1, "alice"))
+
+        val stats = limiter.getStats()
+        assertEquals(3L, stats.admitted)
+        assertEquals(2L, stats.delayed)
+        assertEquals(600_000_000L, stats.totalDelayNanos)
+    }
+
+    @Test
+    fun conversationRejectionRefundsSender() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 10,
+            conversationRate = 1.0, conversationBurst = 1))
+        assertEquals(0L, limiter.acquire(1, "alice"))
+
+        // Conversation 1 is exhausted, so bob's sends there must not use up his own tokens
+        repeat(5) { assertEquals(RateLimiter.REJECTED, limiter.acquire(1, "bob")) }
+        for (conversationId in 2L..11L) {
+            assertEquals(0L, limiter.acquire(conversationId, "bob"))
+        }
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(12, "bob"))
+
+        val stats = limiter.getStats()
+        assertEquals(5L, stats.rejectedByConversation)
+        assertEquals(1L, stats.rejectedBySender)
+    }
+
+    @Test
+    fun dropsRefilledBucketsButKeepsActiveOnes() {
+        val limiter = limiter(RateLimitConfig(senderRate = 5.0, senderBurst = 10))
+        repeat(1000) { limiter.acquire(1, "idle-$it") }
+        assertEquals(1001, limiter.getBucketCount())
+
+        now += 10_000_000_000
+        repeat(10) { limiter.acquire(2, "busy") }
+        repeat(RateLimiter.SWEEP_INTERVAL) { limiter.acquire(3, "new-$it") }
+
+        // Only the idle buckets were dropped: "busy", conversations 2 and 3 and the new senders remain
+        assertEquals(RateLimiter.SWEEP_INTERVAL + 3, limiter.getBucketCount())
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(2, "busy"))
+    }
+}
@@ -0,0 +1,75 @@
+package chat.backend.analytics
+
+import chat.backend.Message
+import chat.backend.repository.InMemoryConversationRepository
+import chat.backend.repository.InMemoryMessageRepository
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.ForkJoinPool
+
+class ConversationAnalyticsTest {
+    private val now = Instant.parse("2024-01-01T12:00:00Z")
+    private val clock = Clock.fixed(now, ZoneOffset.UTC)
+    private val pool = ForkJoinPool(4)
+
+    private val conversations = InMemoryConversationRepository()
+    private val messages = InMemoryMessageRepository(trainDictionaries = false)
+
+    private fun analytics(chunkSize: Int) =
+        ConversationAnalytics(conversations, messages, AnalyticsConfig(chunkSize = chunkSize), pool, clock)
+
+    private fun populate(): List<Long> {
+        val sizes = listOf(0, 5, 103)
+        return sizes.map { size ->
+            val id = conversations.create("c$size", emptyList()).id
+            repeat(size) {
+                messages.create(id, "user-${it % 3}", "x".repeat(it * 7), if (it % 4 == 0) ByteArray(1) else null)
+            }
+            id
+        }
+    }
+
+    @Test
+    fun splitRunMatchesSequentialRun() {
+        val ids = populate()
+        val split = analytics(chunkSize = 4).computeReport()
+        val sequential = analytics(chunkSize = 1_000_000).computeReport()
+
+        assertEquals(sequential.global, split.global)
+        assertEquals(sequential.conversations, split.conversations)
+        assertEquals(108L, split.global.messageCount)
+        assertEquals(2L + 26L, split.global.imageCount)
+        assertEquals(0L, split.conversations.getValue(ids[0]).messageCount)
+        assertEquals(analytics(chunkSize = 1_000_000).computeStats(ids[2]), analytics(chunkSize = 3).computeStats(ids[2]))
+    }
+
+    @Test
+    fun mergedTotalsMatchTheMessages() {
+        val ids = populate()
+        val stats = analytics(chunkSize = 4).computeStats(ids[2])!!
+
+        assertEquals(103L, stats.messageCount)
+        assertEquals((0 until 103).sumOf { it * 7L }, stats.textChars)
+        assertEquals(mapOf("user-0" to 35L, "user-1" to 34L, "user-2" to 34L), stats.topSenders)
+        assertEquals(103L, stats.sizeHistogram.sum())
+        assertNull(analytics(chunkSize = 4).computeStats(-1))
+    }
+
+    @Test
+    fun rollingStatsOnlyCoverTheWindow() {
+        val analytics = analytics(chunkSize = 4)
+        // Default window: 60 buckets of 10 seconds
+        analytics.record(Message(1, 1, "alice", "now", null, now))
+        analytics.record(Message(2, 1, "bob", "recent", null, now.minusSeconds(30)))
+        analytics.record(Message(3, 1, "alice", "too old", null, now.minusSeconds(11 * 60)))
+        analytics.record(Message(4, 2, "carol", "other", null, now))
+
+        assertEquals(2L, analytics.rollingStats(1).messageCount)
+        assertEquals(3L, analytics.globalRollingStats().messageCount)
+        assertEquals(0L, analytics.rollingStats(3).messageCount)
+    }
+}
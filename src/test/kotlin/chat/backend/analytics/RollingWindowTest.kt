@@ -0,0 +1,86 @@
+package chat.backend.analytics
+
+import chat.backend.Message
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class RollingWindowTest {
+    private var nextId = 1L
+
+    private fun message(atMillis: Long, sender: String = "alice", text: String = "hi") =
+        Message(nextId++, 1, sender, text, null, Instant.ofEpochMilli(atMillis))
+
+    @Test
+    fun countsMessagesInsideTheWindow() {
+        val window = RollingWindow(1000, 5)
+        window.record(message(100, "alice"))
+        window.record(message(1100, "bob", "x".repeat(100)))
+        window.record(message(4900, "alice"))
+
+        val stats = window.snapshot(1, 4999, 10)
+        assertEquals(3L, stats.messageCount)
+        assertEquals(mapOf("alice" to 2L, "bob" to 1L), stats.topSenders)
+        assertEquals(listOf(2L, 0L, 1L, 0L, 0L, 0L), stats.sizeHistogram)
+        assertEquals(listOf(0L, 1000L, 4000L), stats.messageRate.keys.map { it.toEpochMilli() })
+    }
+
+    @Test
+    fun excludesBucketsOutsideTheWindow() {
+        val window = RollingWindow(1000, 5)
+        window.record(message(100))
+        window.record(message(2100))
+
+        // Bucket 0 has aged out once the window covers buckets 1 to 5
+        assertEquals(1L, window.snapshot(null, 5000, 10).messageCount)
+        assertEquals(0L, window.snapshot(null, 7000, 10).messageCount)
+        // Buckets ahead of "now" are not part of the window either
+        val early = window.snapshot(null, 1500, 10)
+        assertEquals(1L, early.messageCount)
+        assertEquals(listOf(0L), early.messageRate.keys.map { it.toEpochMilli() })
+    }
+
+    @Test
+    fun replacesAnAgedOutBucketAndDropsOlderMessages() {
+        val window = RollingWindow(1000, 5)
+        window.record(message(100))
+        window.record(message(200))
+        // Same slot a full window later replaces the bucket
+        window.record(message(5100))
+        // A late message for the replaced bucket is older than the window
+        window.record(message(300))
+
+        val stats = window.snapshot(null, 5100, 10)
+        assertEquals(1L, stats.messageCount)
+        assertEquals(listOf(5000L), stats.messageRate.keys.map { it.toEpochMilli() })
+    }
+
+    @Test
+    fun concurrentRecordingLosesNothing() {
+        val window = RollingWindow(1000, 5)
+        val threads = 8
+        val perThread = 10_000
+        val pool = Executors.newFixedThreadPool(threads)
+        val messages = List(threads) { t -> List(perThread) { message(1000L + it % 1000, "sender-$t") } }
+        for (batch in messages) {
+            pool.execute { batch.forEach(window::record) }
+        }
+        pool.shutdown()
+        pool.awaitTermination(30, TimeUnit.SECONDS)
+
+        val stats = window.snapshot(null, 1999, threads)
+        assertEquals((threads * perThread).toLong(), stats.messageCount)
+        assertEquals(List(threads) { perThread.toLong() }, stats.topSenders.values.toList())
+    }
+
+    @Test
+    fun sizeBucketsFollowTheBounds() {
+        assertEquals(0, StatsAccumulator.sizeBucket(0))
+        assertEquals(0, StatsAccumulator.sizeBucket(15))
+        assertEquals(1, StatsAccumulator.sizeBucket(16))
+        assertEquals(4, StatsAccumulator.sizeBucket(4095))
+        assertEquals(5, StatsAccumulator.sizeBucket(4096))
+    }
+}
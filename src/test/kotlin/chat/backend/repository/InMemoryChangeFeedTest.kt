@@ -0,0 +1,111 @@
+package chat.backend.repository
+
+import chat.backend.ChangeEvent
+import chat.backend.Message
+import chat.backend.OffsetOutOfRangeException
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.concurrent.thread
+
+class InMemoryChangeFeedTest {
+
+    private fun appendMessages(feed: InMemoryChangeFeed, count: Int) {
+        repeat(count) { feed.appendMessageSent(Message(it + 1L, 1, "alice", "message $it")) }
+    }
+
+    @Test
+    fun assignsConsecutiveOffsets() {
+        val feed = InMemoryChangeFeed(retention = 10)
+        assertEquals(0L, feed.appendConversationCreated(1, listOf("alice")).offset)
+        assertEquals(1L, feed.appendParticipantAdded(1, "bob").offset)
+        assertEquals(2L, feed.appendMessageSent(Message(1, 1, "bob", "hi")).offset)
+
+        val events = feed.read(0, 10)
+        assertEquals(listOf(0L, 1L, 2L), events.map { it.offset })
+        assertEquals(listOf(ChangeEvent.Type.CONVERSATION_CREATED, ChangeEvent.Type.PARTICIPANT_ADDED,
+            ChangeEvent.Type.MESSAGE_SENT), events.map { it.type })
+        assertEquals(3L, feed.nextOffset())
+    }
+
+    @Test
+    fun readsAreLimitedToMaxEvents() {
+        val feed = InMemoryChangeFeed(retention = 10)
+        appendMessages(feed, 5)
+
+        assertEquals(listOf(1L, 2L), feed.read(1, 2).map { it.offset })
+        assertTrue(feed.read(5, 10).isEmpty())
+    }
+
+    @Test
+    fun keepsOnlyTheRetainedEvents() {
+        val feed = InMemoryChangeFeed(retention = 4)
+        appendMessages(feed, 10)
+
+        assertEquals(6L, feed.earliestOffset())
+        assertEquals(10L, feed.nextOffset())
+        val events = feed.read(6, 100)
+        assertEquals(listOf(6L, 7L, 8L, 9L), events.map { it.offset })
+        assertEquals(listOf(7L, 8L, 9L, 10L), events.map { it.message!!.id })
+    }
+
+    @Test
+    fun rejectsOffsetsOutsideTheRetainedRange() {
+        val feed = InMemoryChangeFeed(retention = 4)
+        appendMessages(feed, 10)
+
+        val tooOld = assertThrows(OffsetOutOfRangeException::class.java) { feed.read(5, 1) }
+        assertEquals(5L, tooOld.requestedOffset)
+        assertEquals(6L, tooOld.earliestOffset)
+        assertEquals(10L, tooOld.nextOffset)
+        assertThrows(OffsetOutOfRangeException::class.java) { feed.read(11, 1) }
+        assertThrows(OffsetOutOfRangeException::class.java) { feed.poll(5, 1, 0) }
+
+        // Both ends of the range are valid
+        assertEquals(1, feed.read(6, 1).size)
+        assertTrue(feed.read(10, 1).isEmpty())
+    }
+
+    @Test
+    fun pollTimesOutWhenCaughtUp() {
+        val feed = InMemoryChangeFeed(retention = 4)
+        appendMessages(feed, 2)
+
+        val start = System.nanoTime()
+        assertTrue(feed.poll(2, 10, 50).isEmpty())
+        assertTrue(System.nanoTime() - start >= 50_000_000)
+    }
+
+    @Test
+    fun pollWakesUpOnAppend() {
+        val feed = InMemoryChangeFeed(retention = 4)
+        val writer = thread {
+            Thread.sleep(50)
+            feed.appendParticipantAdded(1, "bob")
+        }
+
+        val events = feed.poll(0, 10, 10_000)
+        writer.join()
+        assertEquals(1, events.size)
+        assertEquals("bob", events[0].userName)
+    }
+
+    @Test
+    fun commitsOffsetsWithinTheFeed() {
+        val feed = InMemoryChangeFeed(retention = 4)
+        appendMessages(feed, 10)
+        assertNull(feed.committedOffset("indexer"))
+
+        feed.commit("indexer", 10)
+        assertEquals(10L, feed.committedOffset("indexer"))
+        // Committed offsets are kept even once retention has dropped them
+        feed.commit("indexer", 0)
+        assertEquals(0L, feed.committedOffset("indexer"))
+
+        assertThrows(IllegalArgumentException::class.java) { feed.commit("indexer", 11) }
+        assertThrows(IllegalArgumentException::class.java) { feed.commit("indexer", -1) }
+        assertEquals(0L, feed.committedOffset("indexer"))
+    }
+}
@@ -0,0 +1,96 @@
+package chat.backend.repository
+
+import chat.backend.Conversation
+import chat.backend.ConversationSummaryEvent
+import chat.backend.Message
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+import java.time.Instant
+
+class InMemoryConversationSummaryRepositoryTest {
+    private val start = Instant.parse("2024-01-01T00:00:00Z")
+
+    private fun message(id: Long, conversationId: Long, secondsAfterStart: Long, text: String = "message $id") =
+        Message(id, conversationId, "alice", text, null, start.plusSeconds(secondsAfterStart))
+
+    /** Three conversations, oldest activity last: 3, 2, 1. */
+    private fun repositoryWithThree(): InMemoryConversationSummaryRepository {
+        val repository = InMemoryConversationSummaryRepository()
+        for (id in 1L..3L) {
+            repository.insert(Conversation(id, "c$id"), message(id, id, id), 1)
+        }
+        return repository
+    }
+
+    private fun idsInOrder(repository: InMemoryConversationSummaryRepository) =
+        repository.findPage(0, 10).map { it.conversationId }
+
+    @Test
+    fun insertReportsPositionInActivityOrder() {
+        val repository = repositoryWithThree()
+        val event = repository.insert(Conversation(4, "c4"), message(4, 4, 2), 1)
+
+        assertEquals(ConversationSummaryEvent.Type.INSERTED, event.type)
+        assertEquals(-1, event.fromIndex)
+        // Same activity as conversation 2, newer id goes first
+        assertEquals(1, event.toIndex)
+        assertEquals(listOf(3L, 4L, 2L, 1L), idsInOrder(repository))
+    }
+
+    @Test
+    fun recordMessageMovesConversationToTheTop() {
+        val repository = repositoryWithThree()
+        val event = repository.recordMessage(message(10, 1, 100), 2)!!
+
+        assertEquals(ConversationSummaryEvent.Type.MOVED, event.type)
+        assertEquals(2, event.fromIndex)
+        assertEquals(0, event.toIndex)
+        assertEquals(2, event.summary.messageCount)
+        assertEquals(2, event.summary.participantCount)
+        assertEquals(listOf(1L, 3L, 2L), idsInOrder(repository))
+    }
+
+    @Test
+    fun recordMessageOnTopConversationIsAnUpdate() {
+        val repository = repositoryWithThree()
+        val event = repository.recordMessage(message(10, 3, 100), 1)!!
+
+        assertEquals(ConversationSummaryEvent.Type.UPDATED, event.type)
+        assertEquals(0, event.fromIndex)
+        assertEquals(0, event.toIndex)
+    }
+
+    @Test
+    fun olderMessageRecordedLastDoesNotReplaceNewest() {
+        val repository = repositoryWithThree()
+        repository.recordMessage(message(11, 1, 101, "newer"), 1)
+        repository.recordMessage(message(10, 1, 100, "older"), 1)
+
+        val summary = repository.findById(1)!!
+        assertEquals(11L, summary.lastMessage!!.id)
+        assertEquals("alice: newer", summary.lastMessagePreview)
+        assertEquals(start.plusSeconds(101), summary.lastActivity)
+        assertEquals(3, summary.messageCount)
+    }
+
+    @Test
+    fun unchangedParticipantCountReportsNothing() {
+        val repository = repositoryWithThree()
+
+        assertNull(repository.updateParticipantCount(2, 0))
+        val event = repository.updateParticipantCount(2, 5)!!
+        assertEquals(ConversationSummaryEvent.Type.UPDATED, event.type)
+        assertEquals(1, event.toIndex)
+        assertNull(repository.recordMessage(message(20, 99, 0), 1))
+    }
+
+    @Test
+    fun pagesAreSlicesOfTheOrderedList() {
+        val repository = repositoryWithThree()
+
+        assertEquals(listOf(2L, 1L), repository.findPage(1, 5).map { it.conversationId })
+        assertEquals(emptyList<Long>(), repository.findPage(3, 5).map { it.conversationId })
+        assertEquals(3, repository.count())
+    }
+}
@@ -0,0 +1,95 @@
+package chat.backend.repository
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+class TextCompressorTest {
+
+    @Test
+    fun keepsShortTextPlain() {
+        val compressor = TextCompressor(1)
+        val text = compressor.compress("see you at lunch")
+
+        assertEquals("see you at lunch", text.get())
+        assertEquals(16, text.storedBytes)
+        assertEquals(0L, compressor.getStats().compressedMessages)
+    }
+
+    @Test
+    fun compressesLongTextAndRoundTrips() {
+        val compressor = TextCompressor(1, trainDictionary = false)
+        val original = "the build is green again, ".repeat(20) + "ü\nand ünïcödé 雪 survives"
+        val text = compressor.compress(original)
+
+        assertEquals(original, text.get())
+        assertEquals(original.length, text.length)
+        val stats = compressor.getStats()
+        assertEquals(1L, stats.compressedMessages)
+        assertTrue(stats.storedBytes < stats.rawBytes)
+        assertEquals(1L, stats.decompressions)
+    }
+
+    @Test
+    fun sizesLatin1TextAtOneBytePerChar() {
+        val compressor = TextCompressor(1, trainDictionary = false)
+        compressor.compress("café crème")
+        compressor.compress("привет")
+
+        val stats = compressor.getStats()
+        assertEquals(10L + 12L, stats.rawBytes)
+        assertEquals(stats.rawBytes, stats.storedBytes)
+    }
+
+    @Test
+    fun keepsIncompressibleTextPlain() {
+        val compressor = TextCompressor(1, trainDictionary = false)
+        val random = Random(42)
+        val original = String(CharArray(200) { (' ' + random.nextInt(95)) })
+        val text = compressor.compress(original)
+
+        assertEquals(original, text.get())
+        assertEquals(0L, compressor.getStats().compressedMessages)
+        assertEquals(200, text.storedBytes)
+    }
+
+    @Test
+    fun trainsDictionaryAndRoundTripsWithIt() {
+        val compressor = TextCompressor(1)
+        val early = compressor.compress("deploying the release candidate to staging now, ".repeat(3))
+        repeat(200) { compressor.compress(STOCK_LINES[it % STOCK_LINES.size]) }
+        assertTrue(compressor.getStats().dictionaryTrained)
+
+        // Barely compressible on its own, but the dictionary covers most of it
+        val line = STOCK_LINES.joinToString(" ")
+        val plain = TextCompressor(2, trainDictionary = false).compress(line)
+        val text = compressor.compress(line)
+        assertEquals(line, text.get())
+        assertTrue(text.storedBytes < plain.storedBytes)
+
+        // Text written before the dictionary existed still decodes
+        assertEquals("deploying the release candidate to staging now, ".repeat(3), early.get())
+    }
+
+    @Test
+    fun noDictionaryWhenTrainingDisabled() {
+        val compressor = TextCompressor(1, trainDictionary = false)
+        repeat(300) { compressor.compress("deploying release $it to staging") }
+
+        val stats = compressor.getStats()
+        assertFalse(stats.dictionaryTrained)
+        assertEquals(300L, stats.messages)
+        assertEquals(0L, stats.compressedMessages)
+    }
+
+    companion object {
+        private val STOCK_LINES = listOf(
+            "the nightly build is green",
+            "can someone review my pull request?",
+            "deploying to staging now",
+            "rolling back the last release"
+        )
+    }
+}